@@ -1,7 +1,9 @@
 package net.afterlifelochie.fontbox;
 
+import net.afterlifelochie.fontbox.api.FontboxManager;
 import net.afterlifelochie.fontbox.api.data.IBook;
 import net.afterlifelochie.fontbox.api.data.IBookProperties;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
 import net.afterlifelochie.fontbox.api.formatting.PageMode;
 import net.afterlifelochie.fontbox.api.formatting.PageProperties;
 import net.afterlifelochie.fontbox.api.layout.IPage;
@@ -10,6 +12,8 @@ import net.afterlifelochie.fontbox.api.tracer.ITracer;
 import net.afterlifelochie.fontbox.render.BookGUI;
 import net.minecraft.client.gui.GuiScreen;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class Book implements IBook {
@@ -17,11 +21,31 @@ public class Book implements IBook {
     private final List<? extends IPage> pages;
     private final IPageIndex index;
     private final IBookProperties properties;
+    private final FontboxManager manager;
+    private final Collection<IGLFont> fonts;
 
     public Book(List<? extends IPage> pages, IPageIndex index, IBookProperties properties) {
+        this(pages, index, properties, null, Collections.emptyList());
+    }
+
+    /**
+     * Create a book whose GUIs keep the fonts it uses referenced while they
+     * are open, so they are never evicted from texture memory while
+     * displayed.
+     *
+     * @param pages      The pages of the book
+     * @param index      The page index
+     * @param properties The book properties
+     * @param manager    The manager the fonts are registered with
+     * @param fonts      The fonts used by the pages
+     */
+    public Book(List<? extends IPage> pages, IPageIndex index, IBookProperties properties, FontboxManager manager,
+                Collection<IGLFont> fonts) {
         this.pages = pages;
         this.index = index;
         this.properties = properties;
+        this.manager = manager;
+        this.fonts = fonts;
     }
 
     @Override
@@ -73,6 +97,8 @@ public class Book implements IBook {
     public GuiScreen getGui(ITracer tracer) {
         BookGUI gui = new BookGUI(properties, tracer);
         gui.changePages(pages, index);
+        if (manager != null)
+            gui.retainFonts(manager, fonts);
         return gui;
     }
 }
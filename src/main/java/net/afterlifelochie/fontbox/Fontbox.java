@@ -4,6 +4,10 @@ import net.afterlifelochie.fontbox.api.DocumentBuilder;
 import net.afterlifelochie.fontbox.api.IDocumentBuilder;
 import net.afterlifelochie.fontbox.api.font.GLFontBuilder;
 import net.afterlifelochie.fontbox.api.font.IGLFontBuilder;
+import net.afterlifelochie.fontbox.render.RenderQueueHandler;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.resources.IReloadableResourceManager;
+import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.discovery.ASMDataTable;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
@@ -18,7 +22,7 @@ public class Fontbox {
     public static final String ID = "fontbox";
 
     private static final IDocumentBuilder documentBuilder = new net.afterlifelochie.fontbox.document.DocumentBuilder();
-    private static final IGLFontBuilder fontBuilder = new net.afterlifelochie.fontbox.font.GLFontBuilder();
+    private static final net.afterlifelochie.fontbox.font.GLFontBuilder fontBuilder = new net.afterlifelochie.fontbox.font.GLFontBuilder();
 
     @Mod.EventHandler
     public void preInit(FMLPreInitializationEvent event) {
@@ -27,6 +31,8 @@ public class Fontbox {
         injectIntoFields(event.getModLog(), event.getAsmData(), GLFontBuilder.class, IGLFontBuilder.class, fontBuilder);
         log.info("Providing DocumentBuilders...");
         injectIntoFields(event.getModLog(), event.getAsmData(), DocumentBuilder.class, IDocumentBuilder.class, documentBuilder);
+        MinecraftForge.EVENT_BUS.register(new RenderQueueHandler());
+        ((IReloadableResourceManager) Minecraft.getMinecraft().getResourceManager()).registerReloadListener(fontBuilder);
     }
 
     public static <T> void injectIntoFields(Logger log, ASMDataTable asmDataTable, Class annotation, Class<T> type, T instance) {
@@ -4,14 +4,143 @@ import net.afterlifelochie.fontbox.api.font.IGLFont;
 import net.afterlifelochie.fontbox.api.tracer.ITracer;
 import net.afterlifelochie.fontbox.api.tracer.VoidTracer;
 import net.afterlifelochie.fontbox.font.GLFont;
+import net.afterlifelochie.fontbox.font.GLWordCache;
 
-import java.util.HashMap;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Manger used for passing around commonly used objects
  * and doing some debug checks and prints
  */
 public class FontboxManager {
+    /**
+     * The default time budget for draining the upload queue each frame, in
+     * nanoseconds
+     */
+    public static final long UPLOAD_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    /**
+     * Work which must run on the render thread, shared by every manager
+     */
+    private static final Queue<Runnable> uploads = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The pool which runs asynchronous font loading, created on first use
+     */
+    private static ExecutorService loader;
+
+    /**
+     * The number of frames started, so a font bound many times in a frame is
+     * counted as used once
+     */
+    private static volatile long frame = 0;
+
+    /**
+     * Start a new frame. Every font bound after this is counted as used
+     * again. Must be called on the render thread.
+     */
+    public static void nextFrame() {
+        frame++;
+    }
+
+    /**
+     * Get the pool which runs the CPU side of asynchronous font loading.
+     *
+     * @return The font loading pool
+     */
+    public static synchronized Executor loadExecutor() {
+        if (loader == null) {
+            AtomicInteger count = new AtomicInteger();
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+            loader = Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "Fontbox loader " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return loader;
+    }
+
+    /**
+     * Queue work which must run on the render thread, such as a texture upload.
+     * The work is run the next time the upload queue is drained, which is at
+     * the start of each frame once render ticks run. Before then, such as
+     * during mod initialization, the returned future only completes if the
+     * caller waits with {@link FontboxManager#awaitUploads(CompletableFuture)}.
+     *
+     * @param task The work to run
+     * @param <T>  The result type
+     * @return A future completed with the result of the work on the render
+     * thread
+     */
+    public static <T> CompletableFuture<T> queueUpload(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        uploads.add(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Run queued render thread work until the queue is empty or the time
+     * budget is spent. At least one task is run on every call. Must be called
+     * on the render thread.
+     *
+     * @param budgetNanos The time budget, in nanoseconds
+     * @return The number of tasks run
+     */
+    public static int drainUploads(long budgetNanos) {
+        long start = System.nanoTime();
+        int count = 0;
+        Runnable task;
+        while ((task = uploads.poll()) != null) {
+            task.run();
+            count++;
+            if (System.nanoTime() - start >= budgetNanos)
+                break;
+        }
+        return count;
+    }
+
+    /**
+     * Wait for a future which depends on the upload queue, such as a font
+     * loaded asynchronously, running queued work on the calling thread while
+     * waiting. Joining such a future on the render thread before render ticks
+     * start never returns, since nothing drains the queue; use this instead,
+     * for example to wait for fonts during mod initialization. Must be called
+     * on the render thread.
+     *
+     * @param future The future
+     * @param <T>    The result type
+     * @return The result of the future
+     * @throws CompletionException If the future completed exceptionally
+     */
+    public static <T> T awaitUploads(CompletableFuture<T> future) {
+        while (!future.isDone())
+            if (drainUploads(UPLOAD_BUDGET_NANOS) == 0)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        return future.join();
+    }
+
+    /**
+     * Check if there is queued render thread work.
+     *
+     * @return If the upload queue is not empty
+     */
+    public static boolean hasPendingUploads() {
+        return !uploads.isEmpty();
+    }
+
     /**
      * The system tracer
      */
@@ -47,31 +176,174 @@ public class FontboxManager {
     }
 
     /**
-     * The map of all font names to fonts
+     * The default texture memory budget, in bytes
+     */
+    public static final long DEFAULT_TEXTURE_BUDGET = 32L * 1024L * 1024L;
+
+    /**
+     * The handle of a font which is not registered
+     */
+    public static final int NO_HANDLE = IGLFont.NO_HANDLE;
+
+    /**
+     * The number of handles in each page of the font table
      */
-    private HashMap<String, IGLFont> fonts = new HashMap<>();
+    private static final int PAGE_SIZE = 64;
+
+    /**
+     * The largest number of pages in the font table
+     */
+    private static final int MAX_PAGES = 1024;
+
+    /**
+     * A registered font, its handle and the time it was last used. Each
+     * registration gets its own slot, so a slot compared by identity never
+     * matches a later font given the same handle.
+     */
+    private static final class Slot {
+        final IGLFont font;
+        final int handle;
+        volatile long lastUsed;
+        /**
+         * The frame the font was last used in
+         */
+        volatile long usedFrame = -1;
+        /**
+         * If the font is in the set of fonts marked for eviction
+         */
+        volatile boolean marked;
+
+        Slot(IGLFont font, int handle, long lastUsed) {
+            this.font = font;
+            this.handle = handle;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * The font table, indexed by handle. Pages are created on demand and are
+     * never moved, so lookups never lock.
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<Slot>> pages = new AtomicReferenceArray<>(MAX_PAGES);
+
+    /**
+     * The next handle never handed out
+     */
+    private final AtomicInteger nextHandle = new AtomicInteger();
+
+    /**
+     * The handles of deleted and replaced fonts, handed out again before new
+     * handles
+     */
+    private final ConcurrentLinkedDeque<Integer> freeHandles = new ConcurrentLinkedDeque<>();
+
+    /**
+     * The map of all font names to the slots of their fonts
+     */
+    private final ConcurrentHashMap<String, Slot> names = new ConcurrentHashMap<>();
+
+    /**
+     * The use clock, for least recently used ordering
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * The fonts referenced by each live holder, such as an open book GUI
+     */
+    private final Map<Object, Collection<IGLFont>> holders = new WeakHashMap<>();
+
+    /**
+     * The texture memory budget, in bytes
+     */
+    private volatile long textureBudget = DEFAULT_TEXTURE_BUDGET;
+
+    /**
+     * The fonts marked for eviction off the render thread, evicted when the
+     * upload queue is next drained
+     */
+    private final Set<Slot> marked = new HashSet<>();
+
+    /**
+     * If an eviction of the marked fonts is on the upload queue
+     */
+    private boolean evictionQueued = false;
+
+    /**
+     * Font use counters
+     */
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    /**
+     * The measurements of words laid out with registered fonts
+     */
+    private final GLWordCache words = new GLWordCache(GLWordCache.DEFAULT_CAPACITY);
 
     /**
      * Allocate a font on the font record heap. The font can later be referenced
-     * using {@link FontboxManager#fromName(String)}.
+     * using {@link FontboxManager#fromName(String)} or by the returned handle
+     * using {@link FontboxManager#fromHandle(int)}. If a font of the same name
+     * is already allocated, it is replaced and its handle becomes invalid.
+     * The handles of deleted and replaced fonts are handed out again. May
+     * be called from any thread. Registration never locks: handles are taken
+     * from a lock-free free list, and slots and names are published and
+     * released with compare-and-set. If the texture budget is exceeded, fonts
+     * are marked for eviction and evicted on the render thread the next time
+     * the upload queue is drained.
      *
      * @param font The font object
+     * @return The handle of the font
      */
-    public void allocateFont(IGLFont font) {
-        fonts.put(font.getName(), font);
+    public int allocateFont(IGLFont font) {
+        if (font == null)
+            throw new IllegalArgumentException("font may not be null");
+        Integer free = freeHandles.poll();
+        int handle = (free != null) ? free : nextHandle.getAndIncrement();
+        if (handle >= MAX_PAGES * PAGE_SIZE)
+            throw new IllegalStateException("Font handles exhausted");
+        AtomicReferenceArray<Slot> page = pages.get(handle / PAGE_SIZE);
+        if (page == null) {
+            pages.compareAndSet(handle / PAGE_SIZE, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(handle / PAGE_SIZE);
+        }
+        // Publish the name first, so a font found by handle is always found by name
+        Slot slot = new Slot(font, handle, clock.incrementAndGet());
+        Slot replaced = names.put(font.getName(), slot);
+        page.set(handle % PAGE_SIZE, slot);
+        if (replaced != null)
+            release(replaced);
+        // A font registered under the same name meanwhile may have failed to release this slot
+        if (names.get(font.getName()) != slot)
+            release(slot);
+        tracer.trace("FontboxManager.allocateFont", font.getName(), handle);
+        trimTextures(font, false);
+        return handle;
     }
 
     /**
      * Delete a font on the font record heap. The font is de-registered from the
      * heap and can no longer be referenced using
-     * {@link FontboxManager#fromName(String)}. Note that this doesn't de-allocate the
-     * resources associated with the font.
+     * {@link FontboxManager#fromName(String)} or its handle. Note that this
+     * doesn't de-allocate the resources associated with the font.
      *
      * @param font The font to de-register
      * @see GLFont#delete(FontboxManager) ()
      */
     public void deleteFont(IGLFont font) {
-        fonts.remove(font.getName());
+        Slot slot = slot(handleOf(font));
+        if (slot == null || slot.font != font)
+            return;
+        names.remove(font.getName(), slot);
+        release(slot);
+        unmark(slot);
+    }
+
+    private void unmark(Slot slot) {
+        if (!slot.marked)
+            return;
+        synchronized (this) {
+            marked.remove(slot);
+            slot.marked = false;
+        }
     }
 
     /**
@@ -83,6 +355,305 @@ public class FontboxManager {
      * hasn't been loaded or doesn't exist.
      */
     public IGLFont fromName(String name) {
-        return fonts.get(name);
+        Slot slot = names.get(name);
+        return (slot != null) ? slot.font : null;
+    }
+
+    /**
+     * Get a font from the font record heap by handle. Never locks.
+     *
+     * @param handle The handle of the font
+     * @return The font, or null if the handle is not allocated or the font
+     * has been deleted or replaced
+     */
+    public IGLFont fromHandle(int handle) {
+        Slot slot = slot(handle);
+        return (slot != null) ? slot.font : null;
+    }
+
+    /**
+     * Get the handle of a registered font.
+     *
+     * @param font The font
+     * @return The handle of the font, or {@link FontboxManager#NO_HANDLE} if
+     * the font is not registered with this manager
+     */
+    public int handleOf(IGLFont font) {
+        if (font == null)
+            return NO_HANDLE;
+        int handle = font.getHandle();
+        Slot slot = slot(handle);
+        if (slot != null && slot.font == font)
+            return handle;
+        slot = names.get(font.getName());
+        return (slot != null && slot.font == font) ? slot.handle : NO_HANDLE;
+    }
+
+    private Slot slot(int handle) {
+        if (handle < 0 || handle >= MAX_PAGES * PAGE_SIZE)
+            return null;
+        AtomicReferenceArray<Slot> page = pages.get(handle / PAGE_SIZE);
+        return (page != null) ? page.get(handle % PAGE_SIZE) : null;
+    }
+
+    /**
+     * Clear a slot and free its handle. Only the thread which clears the
+     * slot frees the handle, so a font deleted and replaced at once frees it
+     * once. Words cached against the handle are dropped before it can be
+     * handed out again, as are words of any font which draws with it, since
+     * those now fall back to other faces.
+     */
+    private void release(Slot slot) {
+        AtomicReferenceArray<Slot> page = pages.get(slot.handle / PAGE_SIZE);
+        if (!page.compareAndSet(slot.handle % PAGE_SIZE, slot, null))
+            return;
+        words.invalidate(slot.handle);
+        for (Slot other : names.values())
+            if (other != slot && other.font.getFaces().contains(slot.font))
+                words.invalidate(other.handle);
+        freeHandles.push(slot.handle);
+    }
+
+    /**
+     * Get every registered font, in least recently used order.
+     */
+    private List<Slot> slots() {
+        List<Slot> slots = new ArrayList<>();
+        int count = Math.min(nextHandle.get(), MAX_PAGES * PAGE_SIZE);
+        for (int handle = 0; handle < count; handle++) {
+            Slot slot = slot(handle);
+            if (slot != null)
+                slots.add(slot);
+        }
+        slots.sort(Comparator.comparingLong(slot -> slot.lastUsed));
+        return slots;
+    }
+
+    /**
+     * Record that a holder, such as an open book GUI, uses a set of fonts.
+     * Referenced fonts are never evicted. The reference is dropped when the
+     * holder is released or garbage collected.
+     *
+     * @param holder The holder
+     * @param used   The fonts used by the holder
+     */
+    public void retainFonts(Object holder, Collection<IGLFont> used) {
+        synchronized (holders) {
+            holders.put(holder, new ArrayList<>(used));
+        }
+    }
+
+    /**
+     * Drop the font references of a holder, then mark fonts for eviction if
+     * the texture budget is exceeded.
+     *
+     * @param holder The holder
+     */
+    public void releaseFonts(Object holder) {
+        synchronized (holders) {
+            holders.remove(holder);
+        }
+        trimTextures(null, false);
+    }
+
+    /**
+     * Check if a font is referenced by any live holder.
+     *
+     * @param font The font
+     * @return If the font is referenced
+     */
+    public boolean isFontReferenced(IGLFont font) {
+        synchronized (holders) {
+            for (Collection<IGLFont> used : holders.values())
+                if (used.contains(font))
+                    return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record a use of a font's texture. Called by fonts on the render thread
+     * when their texture is requested for rendering. A font bound several
+     * times in one frame is counted as used once, and only the first use in
+     * a frame is recorded, without locking.
+     *
+     * @param font     The font
+     * @param restored If the texture had been evicted and was restored for
+     *                 this use
+     */
+    public void markUsed(IGLFont font, boolean restored) {
+        Slot slot = slot(handleOf(font));
+        long now = frame;
+        if (slot != null) {
+            if (!restored && slot.usedFrame == now)
+                return;
+            slot.usedFrame = now;
+            slot.lastUsed = clock.incrementAndGet();
+            unmark(slot);
+        }
+        if (restored) {
+            misses.increment();
+            trimTextures(font, true);
+        } else
+            hits.increment();
+    }
+
+    /**
+     * Set the texture memory budget. When the textures of all resident fonts
+     * exceed the budget, the least recently used unreferenced fonts are
+     * marked, and evicted on the render thread, until the budget is met.
+     *
+     * @param bytes The budget, in bytes
+     */
+    public void setTextureBudget(long bytes) {
+        textureBudget = bytes;
+        trimTextures(null, false);
+    }
+
+    /**
+     * Get the texture memory budget.
+     *
+     * @return The budget, in bytes
+     */
+    public long getTextureBudget() {
+        return textureBudget;
+    }
+
+    /**
+     * Get the texture memory used by all resident fonts.
+     *
+     * @return The resident texture size, in bytes
+     */
+    public long getResidentTextureBytes() {
+        long total = 0;
+        int count = Math.min(nextHandle.get(), MAX_PAGES * PAGE_SIZE);
+        for (int handle = 0; handle < count; handle++) {
+            Slot slot = slot(handle);
+            if (slot != null)
+                total += slot.font.getTextureBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of font uses which found the texture resident. A font
+     * bound several times in one frame is counted once.
+     *
+     * @return The hit count
+     */
+    public long getFontHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of font uses which had to restore an evicted texture.
+     *
+     * @return The miss count
+     */
+    public long getFontMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of font textures evicted.
+     *
+     * @return The eviction count
+     */
+    public long getFontEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the cache of word measurements. Words are cached against font
+     * handles, and when a font is deleted or replaced the words of that font
+     * and of every font which draws with it are dropped.
+     *
+     * @return The word cache
+     */
+    public GLWordCache wordCache() {
+        return words;
+    }
+
+    /**
+     * Get the share of word measurements which were found in the cache.
+     *
+     * @return The hit rate, from 0 to 1
+     */
+    public double getWordCacheHitRate() {
+        long hits = words.getHits(), total = hits + words.getMisses();
+        return (total > 0) ? (double) hits / total : 0;
+    }
+
+    /**
+     * Get the number of word measurements cached.
+     *
+     * @return The size of the word cache
+     */
+    public int getWordCacheSize() {
+        return words.size();
+    }
+
+    /**
+     * Evict the least recently used unreferenced fonts until the resident
+     * textures fit inside the budget. Evicting deletes textures, so off the
+     * render thread the fonts are only marked, and an eviction of the marked
+     * fonts is put on the upload queue.
+     *
+     * @param keep         A font which must not be evicted, or null
+     * @param renderThread If the caller is on the render thread
+     */
+    private synchronized void trimTextures(IGLFont keep, boolean renderThread) {
+        if (renderThread)
+            evictMarked();
+        long total = getResidentTextureBytes();
+        for (Slot slot : marked)
+            total -= slot.font.getTextureBytes();
+        if (total <= textureBudget)
+            return;
+        for (Slot slot : slots()) {
+            if (total <= textureBudget)
+                break;
+            IGLFont font = slot.font;
+            long bytes = font.getTextureBytes();
+            if (font == keep || bytes == 0 || slot.marked || isFontReferenced(font))
+                continue;
+            if (!renderThread) {
+                marked.add(slot);
+                slot.marked = true;
+                total -= bytes;
+            } else if (evict(font, bytes))
+                total -= bytes;
+        }
+        if (!marked.isEmpty() && !evictionQueued) {
+            evictionQueued = true;
+            queueUpload(() -> {
+                synchronized (this) {
+                    evictionQueued = false;
+                    evictMarked();
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Evict the fonts marked for eviction which are still unreferenced. Must
+     * be called on the render thread.
+     */
+    private synchronized void evictMarked() {
+        for (Slot slot : marked) {
+            slot.marked = false;
+            if (!isFontReferenced(slot.font))
+                evict(slot.font, slot.font.getTextureBytes());
+        }
+        marked.clear();
+    }
+
+    private boolean evict(IGLFont font, long bytes) {
+        if (!font.evict())
+            return false;
+        evictions.increment();
+        tracer.trace("FontboxManager.trimTextures", "evict", font.getName(), bytes);
+        return true;
     }
 }
@@ -2,6 +2,7 @@ package net.afterlifelochie.fontbox.api.data;
 
 import net.afterlifelochie.fontbox.api.FontboxManager;
 import net.afterlifelochie.fontbox.api.exception.LayoutException;
+import net.afterlifelochie.fontbox.api.font.FontCoverage;
 import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.formatting.layout.CompilerHint;
 import net.afterlifelochie.fontbox.api.formatting.layout.FloatMode;
@@ -69,6 +70,17 @@ public interface IDocument {
         addCompilerHint(CompilerHint.FLOAT_BREAK);
     }
 
+    /**
+     * Count the text of every element of the document, so fonts can be baked
+     * for only the glyphs the document uses. Documents which do not override
+     * this method count no text.
+     *
+     * @param coverage The coverage to count the text in
+     */
+    default void collectCoverage(FontCoverage coverage) {
+        /* No text */
+    }
+
     GuiScreen createBookGui(FontboxManager manager, IBookProperties bookProperties) throws IOException, LayoutException;
 
     IBook createBook(FontboxManager manager, IBookProperties bookProperties) throws IOException, LayoutException;
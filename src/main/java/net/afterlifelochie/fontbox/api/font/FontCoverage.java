@@ -0,0 +1,101 @@
+package net.afterlifelochie.fontbox.api.font;
+
+import net.afterlifelochie.fontbox.api.data.FormattedString;
+import net.afterlifelochie.fontbox.api.formatting.style.TextFormat;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * The set of code points a group of documents uses, so that fonts can be baked
+ * for only the glyphs the documents need. Text without a format of its own is
+ * drawn in the fonts of the page properties and is counted as default text;
+ * text with an explicit format is counted against the name of its font and of
+ * every face the font draws with.
+ *
+ * @author AfterLifeLochie
+ */
+public class FontCoverage {
+    /**
+     * Get the printable ASCII characters, a margin for text which is not known
+     * when fonts are baked.
+     *
+     * @return The printable ASCII code points
+     */
+    public static BitSet ascii() {
+        BitSet ascii = new BitSet();
+        ascii.set(0x20, 0x7f);
+        return ascii;
+    }
+
+    private final BitSet text = new BitSet();
+    private final Map<String, BitSet> fonts = new HashMap<>();
+
+    /**
+     * Count a plain string as default text.
+     *
+     * @param string The string
+     */
+    public synchronized void add(String string) {
+        add(text, string, 0, string.length());
+    }
+
+    /**
+     * Count a formatted string.
+     *
+     * @param string The string
+     */
+    public synchronized void add(FormattedString string) {
+        NavigableMap<Integer, TextFormat> formats = string.formatter.getFormats();
+        int length = string.string.length();
+        Map.Entry<Integer, TextFormat> first = formats.firstEntry();
+        add(text, string.string, 0, (first != null) ? Math.min(first.getKey(), length) : length);
+        for (Map.Entry<Integer, TextFormat> run : formats.entrySet()) {
+            Integer next = formats.higherKey(run.getKey());
+            int start = Math.max(run.getKey(), 0), end = (next != null) ? Math.min(next, length) : length;
+            IGLFont font = (run.getValue() != null) ? run.getValue().font : null;
+            if (font == null) {
+                add(text, string.string, start, end);
+                continue;
+            }
+            add(fonts.computeIfAbsent(font.getName(), name -> new BitSet()), string.string, start, end);
+            for (IGLFont face : font.getFaces())
+                if (face != font)
+                    add(fonts.computeIfAbsent(face.getName(), name -> new BitSet()), string.string, start, end);
+        }
+    }
+
+    private static void add(BitSet set, String string, int start, int end) {
+        for (int i = start; i < end; i++)
+            set.set(string.charAt(i));
+    }
+
+    /**
+     * Get the code points of the default text.
+     *
+     * @return The default text code points
+     */
+    public synchronized BitSet getDefault() {
+        return (BitSet) text.clone();
+    }
+
+    /**
+     * Get the code points a font must hold: the default text, the text
+     * explicitly formatted with the font, and a margin.
+     *
+     * @param name   The name of the font, case sensitive
+     * @param margin Extra code points to include, or null
+     * @return The code points to bake
+     */
+    public synchronized BitSet forFont(String name, BitSet margin) {
+        BitSet result = (BitSet) text.clone();
+        BitSet own = fonts.get(name);
+        if (own != null)
+            result.or(own);
+        if (margin != null)
+            result.or(margin);
+        return result;
+    }
+}
@@ -2,9 +2,16 @@ package net.afterlifelochie.fontbox.api.font;
 
 import net.afterlifelochie.fontbox.api.FontboxManager;
 
+import java.util.Collection;
+import java.util.Collections;
+
 public interface IGLFont {
     char MIN_CH = '\u0000';
     char MAX_CH = '\u00ff';
+    /**
+     * The handle of a font which is not registered
+     */
+    int NO_HANDLE = -1;
 
     /**
      * Get the name of the font.
@@ -13,6 +20,42 @@ public interface IGLFont {
      */
     String getName();
 
+    /**
+     * Get the handle the font was registered under by
+     * {@link FontboxManager#allocateFont(IGLFont)}. Handles are compact ints
+     * which are only unique among the fonts registered with one manager at one
+     * time: the handle of a deleted font is handed out again, and fonts of
+     * different managers may share a handle.
+     *
+     * @return The handle of the font, or {@link IGLFont#NO_HANDLE}
+     */
+    default int getHandle() {
+        return NO_HANDLE;
+    }
+
+    /**
+     * Get the font which draws a character. Fonts which chain other fonts
+     * return the font the character resolves to; every other font draws its
+     * own characters.
+     *
+     * @param c The character
+     * @return The font which draws the character, or null if no font in the
+     * chain can draw it
+     */
+    default IGLFont resolve(char c) {
+        return this;
+    }
+
+    /**
+     * Get the fonts whose textures this font draws with. Holders of the font
+     * retain these fonts too, so their textures are not evicted while in use.
+     *
+     * @return The fonts drawn with
+     */
+    default Collection<IGLFont> getFaces() {
+        return Collections.singletonList(this);
+    }
+
     /**
      * Get the OpenGL texture ID for this font.
      *
@@ -27,6 +70,17 @@ public interface IGLFont {
      */
     float getScale();
 
+    /**
+     * Check if the font's texture holds a signed distance field rather than
+     * glyph coverage. Distance field glyphs are drawn with an alpha test at
+     * half value instead of being blended.
+     *
+     * @return If the texture is a distance field
+     */
+    default boolean isDistanceField() {
+        return false;
+    }
+
     /**
      * Get the font metric map associated with this font.
      *
@@ -34,6 +88,26 @@ public interface IGLFont {
      */
     IGLFontMetrics getMetric();
 
+    /**
+     * Get the size of the font's resident texture memory.
+     *
+     * @return The texture size in bytes, or zero if the texture is not resident
+     */
+    default long getTextureBytes() {
+        return 0;
+    }
+
+    /**
+     * Release the font's texture memory while keeping its metrics. The texture
+     * is restored transparently the next time it is used. Must be called on
+     * the render thread.
+     *
+     * @return If the texture was released
+     */
+    default boolean evict() {
+        return false;
+    }
+
     /**
      * Delete the font. This releases all the resources associated with the font
      * immediately.
@@ -5,9 +5,19 @@ import net.afterlifelochie.fontbox.api.exception.FontException;
 import net.minecraft.util.ResourceLocation;
 
 import java.awt.*;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
 
 public interface IGLFontBuilder {
     int RASTER_DIM = 512;
+    /**
+     * The pixel size distance field atlases are baked at
+     */
+    float SDF_BASE_PX = 48.0f;
+    /**
+     * The distance, in atlas pixels, over which a distance field falls off
+     */
+    int SDF_SPREAD = 6;
 
     /**
      * Create a GLFont from a TTF file
@@ -21,6 +31,38 @@ public interface IGLFontBuilder {
      */
     IGLFont fromTTF(FontboxManager manager, float px, ResourceLocation ttf) throws FontException;
 
+    /**
+     * Create a GLFont from a TTF file which holds only a subset of the
+     * typeface's glyphs, such as the {@link FontCoverage} of the documents
+     * drawn with it. Bake time and texture size scale with the subset rather
+     * than the {@link IGLFont#MIN_CH} to {@link IGLFont#MAX_CH} range, and
+     * code points outside that range may be included.
+     *
+     * @param manager The manger used
+     * @param px      The font pixel size
+     * @param ttf     The TTF file
+     * @param subset  The code points to bake; '?' is always baked, as it is
+     *                drawn in place of glyphs the font does not have
+     * @return The GLFont result
+     * @throws FontException Any exception which occurs when reading the TTF file, brewing
+     *                       the buffer or creating the final font.
+     */
+    IGLFont fromTTF(FontboxManager manager, float px, ResourceLocation ttf, BitSet subset) throws FontException;
+
+    /**
+     * Create a GLFont for each of several sizes of a TTF file. The file is
+     * read and parsed once for every size, and the sizes are baked together
+     * on the font loading pool before being uploaded.
+     *
+     * @param manager The manger used
+     * @param sizes   The font pixel sizes
+     * @param ttf     The TTF file
+     * @return The GLFont results, in the order of the sizes
+     * @throws FontException Any exception which occurs when reading the TTF file, brewing
+     *                       the buffers or creating the final fonts.
+     */
+    IGLFont[] fromTTF(FontboxManager manager, float[] sizes, ResourceLocation ttf) throws FontException;
+
 
     /**
      * Create a GLFont from a sprite font and XML descriptor
@@ -28,7 +70,7 @@ public interface IGLFontBuilder {
      * @param manager The manger used
      * @param name    The name of the font, case sensitive
      * @param image   The image file
-     * @param xml     The XML descriptor file
+     * @param xml     The XML descriptor file, or a binary .fbm metrics file
      * @return The GLFont result
      * @throws FontException Any exception which occurs when reading the image file, when
      *                       reading the XML descriptor, when brewing the buffer or
@@ -36,6 +78,37 @@ public interface IGLFontBuilder {
      */
     IGLFont fromSpriteFont(FontboxManager manager, String name, ResourceLocation image, ResourceLocation xml) throws FontException;
 
+    /**
+     * Create a metrics-only font from a TTF file. The glyphs are measured and
+     * packed but not drawn, and nothing is uploaded, so the font can be
+     * created and laid out off the render thread. The atlas is baked and
+     * uploaded when the font is first drawn.
+     *
+     * @param manager The manger used
+     * @param px      The font pixel size
+     * @param ttf     The TTF file
+     * @return The font result
+     * @throws FontException Any exception which occurs when reading or measuring
+     *                       the TTF file.
+     */
+    IGLFont fromTTFMetrics(FontboxManager manager, float px, ResourceLocation ttf) throws FontException;
+
+    /**
+     * Create a metrics-only font from a sprite font and XML descriptor. Only
+     * the size of the image is read, and nothing is uploaded, so the font can
+     * be created and laid out off the render thread. The image is read and
+     * uploaded when the font is first drawn.
+     *
+     * @param manager The manger used
+     * @param name    The name of the font, case sensitive
+     * @param image   The image file
+     * @param xml     The XML descriptor file, or a binary .fbm metrics file
+     * @return The font result
+     * @throws FontException Any exception which occurs when reading the image
+     *                       size or the XML descriptor.
+     */
+    IGLFont fromSpriteFontMetrics(FontboxManager manager, String name, ResourceLocation image, ResourceLocation xml) throws FontException;
+
     /**
      * Create a GLFont from a Java Font object
      *
@@ -46,4 +119,120 @@ public interface IGLFontBuilder {
      *                       creating the final result.
      */
     IGLFont fromFont(FontboxManager manager, Font font) throws FontException;
+
+    /**
+     * Load a GLFont from a TTF file asynchronously. The file is read and baked
+     * on the font loading pool; only the texture upload runs on the render
+     * thread, from the upload queue drained each frame. Before render ticks
+     * start, wait for the result with
+     * {@link FontboxManager#awaitUploads(CompletableFuture)}, not join().
+     *
+     * @param manager The manger used
+     * @param px      The font pixel size
+     * @param ttf     The TTF file
+     * @return A future completed with the GLFont result, or completed
+     * exceptionally with a {@link FontException}
+     * @see IGLFontBuilder#fromTTF(FontboxManager, float, ResourceLocation)
+     */
+    CompletableFuture<IGLFont> loadFontAsync(FontboxManager manager, float px, ResourceLocation ttf);
+
+    /**
+     * Load a GLFont from a sprite font and XML descriptor asynchronously. The
+     * image and descriptor are read on the font loading pool; only the texture
+     * upload runs on the render thread, from the upload queue drained each
+     * frame. Before render ticks start, wait for the result with
+     * {@link FontboxManager#awaitUploads(CompletableFuture)}, not join().
+     *
+     * @param manager The manger used
+     * @param name    The name of the font, case sensitive
+     * @param image   The image file
+     * @param xml     The XML descriptor file, or a binary .fbm metrics file
+     * @return A future completed with the GLFont result, or completed
+     * exceptionally with a {@link FontException}
+     * @see IGLFontBuilder#fromSpriteFont(FontboxManager, String, ResourceLocation, ResourceLocation)
+     */
+    CompletableFuture<IGLFont> loadFontAsync(FontboxManager manager, String name, ResourceLocation image, ResourceLocation xml);
+
+    /**
+     * Load a GLFont from a Java Font object asynchronously. The font is baked
+     * on the font loading pool; only the texture upload runs on the render
+     * thread, from the upload queue drained each frame. Before render ticks
+     * start, wait for the result with
+     * {@link FontboxManager#awaitUploads(CompletableFuture)}, not join().
+     *
+     * @param manager The manger used
+     * @param font    The font object
+     * @return A future completed with the GLFont result, or completed
+     * exceptionally with a {@link FontException}
+     * @see IGLFontBuilder#fromFont(FontboxManager, Font)
+     */
+    CompletableFuture<IGLFont> loadFontAsync(FontboxManager manager, Font font);
+
+    /**
+     * Create a GLFont from a TTF file which rasterizes glyphs on demand. Any
+     * character the font can display is placed on a growable atlas the first
+     * time it is laid out, so the font is not limited to the Latin-1 range.
+     *
+     * @param manager The manger used
+     * @param px      The font pixel size
+     * @param ttf     The TTF file
+     * @return The GLFont result
+     * @throws FontException Any exception which occurs when reading the TTF file or
+     *                       creating the final font.
+     */
+    IGLFont fromDynamicTTF(FontboxManager manager, float px, ResourceLocation ttf) throws FontException;
+
+    /**
+     * Create a signed distance field GLFont from a TTF file. The typeface is
+     * baked once into a distance field atlas at {@link IGLFontBuilder#SDF_BASE_PX};
+     * every size of the typeface shares that atlas and only scales its
+     * metrics, so text stays sharp at any size.
+     *
+     * @param manager The manger used
+     * @param px      The font pixel size
+     * @param ttf     The TTF file
+     * @return The GLFont result
+     * @throws FontException Any exception which occurs when reading the TTF file, brewing
+     *                       the buffer or creating the final font.
+     */
+    IGLFont fromDistanceFieldTTF(FontboxManager manager, float px, ResourceLocation ttf) throws FontException;
+
+    /**
+     * Create a composite GLFont which chains other fonts. Each character is
+     * drawn with the first font in the chain which has a glyph for it.
+     *
+     * @param manager The manger used
+     * @param name    The name of the font, case sensitive
+     * @param fonts   The fonts to chain, in order of preference; every font
+     *                must already be registered with the manager
+     * @return The GLFont result
+     */
+    IGLFont fromComposite(FontboxManager manager, String name, IGLFont... fonts);
+
+    /**
+     * Create a GLFont from a Java Font object which rasterizes glyphs on
+     * demand.
+     *
+     * @param manager The manger used
+     * @param font    The font object
+     * @return The GLFont result
+     * @throws FontException Any exception which occurs when creating the final
+     *                       result.
+     */
+    IGLFont fromDynamicFont(FontboxManager manager, Font font) throws FontException;
+
+    /**
+     * Set the size limit of the on-disk cache of baked TTF atlases. When the
+     * cache grows past the limit, the least recently used atlases are removed.
+     * A limit of zero disables the cache.
+     *
+     * @param bytes The size limit, in bytes
+     */
+    void setAtlasCacheLimit(long bytes);
+
+    /**
+     * Remove every baked TTF atlas from the on-disk cache, and drop the parsed
+     * TTF typefaces so they are read again.
+     */
+    void clearAtlasCache();
 }
@@ -4,10 +4,152 @@ import java.util.Map;
 
 public interface IGLFontMetrics {
     /**
-     * The individual dimensions and u-v locations of each character in the set
+     * The individual dimensions and u-v locations of each character in the set.
+     * This is a boxed snapshot of the glyph table; prefer the per-character
+     * accessors when measuring or rendering text.
      */
+    @Deprecated
     Map<Integer, IGLGlyphMetric> getGlyphs();
 
+    /**
+     * If the font has a glyph for the character
+     */
+    boolean hasGlyph(char c);
+
+    /**
+     * The character's width, or 0 if the font has no glyph for the character
+     */
+    int widthOf(char c);
+
+    /**
+     * The character's height, or 0 if the font has no glyph for the character
+     */
+    int heightOf(char c);
+
+    /**
+     * The character's ascent, or 0 if the font has no glyph for the character
+     */
+    int ascentOf(char c);
+
+    /**
+     * The character's u origin-coordinate, or 0 if the font has no glyph for
+     * the character
+     */
+    int uOf(char c);
+
+    /**
+     * The character's v origin-coordinate, or 0 if the font has no glyph for
+     * the character
+     */
+    int vOf(char c);
+
+    /**
+     * The adjustment to the advance from one character to the next, or 0 if
+     * the pair is not kerned or kerning is disabled. Never allocates.
+     */
+    default int kerningOf(char left, char right) {
+        return 0;
+    }
+
+    /**
+     * If kerning adjustments are applied, so measurements taken with kerning
+     * enabled are not reused once it is disabled, or the other way round
+     */
+    default boolean isKerningEnabled() {
+        return true;
+    }
+
+    /**
+     * The character's width on the font image, which differs from the width
+     * only when the metrics are scaled from another size
+     */
+    default int texWidthOf(char c) {
+        return widthOf(c);
+    }
+
+    /**
+     * The character's height on the font image, which differs from the height
+     * only when the metrics are scaled from another size
+     */
+    default int texHeightOf(char c) {
+        return heightOf(c);
+    }
+
+    /**
+     * The character's ascent on the font image, which differs from the ascent
+     * only when the metrics are scaled from another size
+     */
+    default int texAscentOf(char c) {
+        return ascentOf(c);
+    }
+
+    /**
+     * The row of the character's glyph, or -1 if the font has no glyph for the
+     * character. Every metric of a glyph can be read by its row, so text can
+     * be measured and drawn with one lookup per character rather than one per
+     * metric. Rows are only valid on the metrics which returned them; by
+     * default, the row of a glyph is its character.
+     */
+    default int rowOf(char c) {
+        return hasGlyph(c) ? c : -1;
+    }
+
+    /**
+     * The width of the glyph in a row
+     */
+    default int widthAt(int row) {
+        return widthOf((char) row);
+    }
+
+    /**
+     * The height of the glyph in a row
+     */
+    default int heightAt(int row) {
+        return heightOf((char) row);
+    }
+
+    /**
+     * The ascent of the glyph in a row
+     */
+    default int ascentAt(int row) {
+        return ascentOf((char) row);
+    }
+
+    /**
+     * The u origin-coordinate of the glyph in a row
+     */
+    default int uAt(int row) {
+        return uOf((char) row);
+    }
+
+    /**
+     * The v origin-coordinate of the glyph in a row
+     */
+    default int vAt(int row) {
+        return vOf((char) row);
+    }
+
+    /**
+     * The width on the font image of the glyph in a row
+     */
+    default int texWidthAt(int row) {
+        return widthAt(row);
+    }
+
+    /**
+     * The height on the font image of the glyph in a row
+     */
+    default int texHeightAt(int row) {
+        return heightAt(row);
+    }
+
+    /**
+     * The ascent on the font image of the glyph in a row
+     */
+    default int texAscentAt(int row) {
+        return ascentAt(row);
+    }
+
     /**
      * The universal width of the font image.
      */
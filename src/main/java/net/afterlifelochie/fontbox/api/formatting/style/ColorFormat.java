@@ -48,6 +48,11 @@ public class ColorFormat implements Cloneable {
         return true;
     }
 
+    @Override
+    public int hashCode() {
+        return (alpha << 24) | ((red & 0xff) << 16) | ((green & 0xff) << 8) | (blue & 0xff);
+    }
+
     @Override
     public String toString() {
         return String.format("ColorFormat{r=%s, g=%s, b=%s, a=%s}", red, green, blue, alpha);
@@ -40,7 +40,10 @@ public class TextFormat implements Cloneable {
         if (!(o instanceof TextFormat))
             return false;
         TextFormat that = (TextFormat) o;
-        if (!font.equals(that.font) || !decorations.equals(that.decorations))
+        // Handles are only unique within one manager, so fonts compare by identity
+        if (font != that.font)
+            return false;
+        if (!decorations.equals(that.decorations))
             return false;
         if ((that.color != null && color == null) || (that.color == null && color != null))
             return false;
@@ -49,4 +52,11 @@ public class TextFormat implements Cloneable {
                 return false;
         return true;
     }
+
+    @Override
+    public int hashCode() {
+        int result = System.identityHashCode(font);
+        result = 31 * result + decorations.hashCode();
+        return 31 * result + ((color != null) ? color.hashCode() : 0);
+    }
 }
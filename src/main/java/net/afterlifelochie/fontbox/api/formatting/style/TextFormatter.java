@@ -1,13 +1,52 @@
 package net.afterlifelochie.fontbox.api.formatting.style;
 
-import java.util.HashMap;
-import java.util.Map;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 public class TextFormatter {
-    private Map<Integer, TextFormat> formatting;
+    /**
+     * The index each run of formatting starts at, ascending
+     */
+    private int[] starts = new int[4];
+    /**
+     * The format of each run
+     */
+    private TextFormat[] runs = new TextFormat[4];
+    /**
+     * The number of runs
+     */
+    private int count;
+
+    /**
+     * Reads the formats of the text one index at a time. Reading indexes in
+     * ascending order advances through the runs in constant time; any other
+     * step falls back to a binary search.
+     */
+    public class Cursor {
+        private int run = -1;
+
+        /**
+         * Get the format at an index.
+         *
+         * @param index The index
+         * @return The format of the run the index is in, or null if the index
+         * is before every run
+         */
+        public TextFormat at(int index) {
+            if (run < 0 || run >= count || starts[run] > index)
+                run = floor(index);
+            else
+                while (run + 1 < count && starts[run + 1] <= index)
+                    run++;
+            return (run >= 0) ? runs[run] : null;
+        }
+    }
 
     public TextFormatter() {
-        formatting = new HashMap<>();
     }
 
     public TextFormatter(TextFormat defaultFormat) {
@@ -15,32 +54,148 @@ public class TextFormatter {
         addDefaultFormat(defaultFormat);
     }
 
+    /**
+     * Find the first run starting at or after an index.
+     *
+     * @param index The index
+     * @return The run, or the number of runs if every run starts before the
+     * index
+     */
+    private int ceiling(int index) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < index)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Find the last run starting at or before an index.
+     *
+     * @param index The index
+     * @return The run, or -1 if every run starts after the index
+     */
+    private int floor(int index) {
+        return (index == Integer.MAX_VALUE) ? count - 1 : ceiling(index + 1) - 1;
+    }
+
+    private void put(int index, TextFormat format) {
+        int at = ceiling(index);
+        if (at < count && starts[at] == index) {
+            runs[at] = format;
+            return;
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            runs = Arrays.copyOf(runs, count * 2);
+        }
+        System.arraycopy(starts, at, starts, at + 1, count - at);
+        System.arraycopy(runs, at, runs, at + 1, count - at);
+        starts[at] = index;
+        runs[at] = format;
+        count++;
+    }
+
     public void addDefaultFormat(TextFormat defaultFormat) {
-        if (!formatting.containsKey(0))
-            formatting.put(0, defaultFormat);
+        int at = ceiling(0);
+        if (at == count || starts[at] != 0)
+            put(0, defaultFormat);
     }
 
     public void addFormatting(int index, TextFormat format) {
-        formatting.put(index, format);
+        put(index, format);
     }
 
     public TextFormat getFormat(int index) {
-        while (!formatting.containsKey(index))
-            index--;
-        return formatting.get(index);
+        int run = floor(index);
+        return (run >= 0) ? runs[run] : null;
     }
 
-    public void cleanAfter(int index) {
-        formatting.entrySet().removeIf(entry -> entry.getKey() >= index && entry.getKey() != 0);
+    /**
+     * Get a cursor which reads the formats of the text in order.
+     *
+     * @return A new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
     }
 
-    public TextFormatter getFormatter(int start, int length) {
-        TextFormatter formatter = new TextFormatter(getFormat(start));
+    /**
+     * Check if one format covers a range of the text.
+     *
+     * @param start The index of the start of the range
+     * @param end   The index after the end of the range
+     * @return If no format starts inside the range after its start
+     */
+    public boolean isUniform(int start, int end) {
+        if (end - start <= 1)
+            return true;
+        int at = ceiling(start + 1);
+        return at == count || starts[at] >= end;
+    }
 
-        for (Map.Entry<Integer, TextFormat> entry : formatting.entrySet())
-            if (entry.getKey() >= start && entry.getKey() <= start + length)
-                formatter.addFormatting(entry.getKey() - start, entry.getValue());
+    /**
+     * Get the formats of the text, keyed by the index each format starts at.
+     *
+     * @return A sorted copy of the formats
+     */
+    public NavigableMap<Integer, TextFormat> getFormats() {
+        TreeMap<Integer, TextFormat> formats = new TreeMap<>();
+        for (int i = 0; i < count; i++)
+            formats.put(starts[i], runs[i]);
+        return formats;
+    }
 
+    /**
+     * Remove every format starting at or after an index, except the default
+     * format.
+     *
+     * @param index The index
+     * @return If any format was removed
+     */
+    public boolean cleanAfter(int index) {
+        int at = ceiling(index), kept = at;
+        if (index <= 0) {
+            int zero = ceiling(0);
+            if (zero < count && starts[zero] == 0) {
+                starts[kept] = 0;
+                runs[kept] = runs[zero];
+                kept++;
+            }
+        }
+        if (kept == count)
+            return false;
+        Arrays.fill(runs, kept, count, null);
+        count = kept;
+        return true;
+    }
+
+    public void collectFonts(Collection<IGLFont> fonts) {
+        for (int i = 0; i < count; i++)
+            if (runs[i] != null && runs[i].font != null) {
+                fonts.add(runs[i].font);
+                fonts.addAll(runs[i].font.getFaces());
+            }
+    }
+
+    public TextFormatter getFormatter(int start, int length) {
+        int from = ceiling(start), to = ceiling(start + length + 1);
+        boolean head = from < to && starts[from] == start;
+        TextFormatter formatter = new TextFormatter();
+        formatter.count = to - from + (head ? 0 : 1);
+        formatter.starts = new int[Math.max(formatter.count, 4)];
+        formatter.runs = new TextFormat[formatter.starts.length];
+        int i = 0;
+        if (!head)
+            formatter.runs[i++] = getFormat(start);
+        for (int run = from; run < to; run++, i++) {
+            formatter.starts[i] = starts[run] - start;
+            formatter.runs[i] = runs[run];
+        }
         return formatter;
     }
 }
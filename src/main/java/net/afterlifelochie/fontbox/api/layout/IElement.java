@@ -1,6 +1,7 @@
 package net.afterlifelochie.fontbox.api.layout;
 
 import net.afterlifelochie.fontbox.api.exception.LayoutException;
+import net.afterlifelochie.fontbox.api.font.FontCoverage;
 import net.afterlifelochie.fontbox.api.tracer.ITracer;
 import net.afterlifelochie.fontbox.render.RenderException;
 import net.minecraft.client.gui.GuiScreen;
@@ -79,6 +80,19 @@ public interface IElement {
         return null;
     }
 
+    /**
+     * <p>
+     * Called to count the text of this element, so fonts can be baked for
+     * only the glyphs in use. Elements without text should not override this
+     * method.
+     * </p>
+     *
+     * @param coverage The coverage to count the text in
+     */
+    default void collectCoverage(FontCoverage coverage) {
+        /* No text */
+    }
+
     /**
      * Called to determine if this element can be compile-rendered. If an
      * element is compiled-rendered, it will be drawn once to a video-buffer;
@@ -53,6 +53,21 @@ public interface IPage extends IContainer, Iterable<IElement> {
      */
      boolean insidePage(ObjectBounds bounds);
 
+    /**
+     * Find the element which encloses a point on the page. Static elements are
+     * searched before dynamic elements.
+     *
+     * @param x The x coordinate of the point
+     * @param y The y coordinate of the point
+     * @return The first element enclosing the point, or null if there is none
+     */
+    default IElement elementAt(int x, int y) {
+        for (IElement element : allElements())
+            if (element.bounds() != null && element.bounds().encloses(x, y))
+                return element;
+        return null;
+    }
+
     @Override
     default Iterator<IElement> iterator(){
         List<IElement> list = new LinkedList<>();
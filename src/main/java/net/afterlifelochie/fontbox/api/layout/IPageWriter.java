@@ -1,5 +1,6 @@
 package net.afterlifelochie.fontbox.api.layout;
 
+import net.afterlifelochie.fontbox.api.FontboxManager;
 import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.formatting.style.TextFormatter;
 
@@ -23,6 +24,17 @@ public interface IPageWriter {
 
     IPageIndex index() throws IOException;
 
+    /**
+     * Get the manager the pages are written for. Writers which do not override
+     * this method have no manager, and their lines are measured without the
+     * manager's word cache.
+     *
+     * @return The manager, or null
+     */
+    default FontboxManager manager() {
+        return null;
+    }
+
     /**
      * Construct a new line writing utility. The underlying stream and the
      * writing font must be specified and cannot be null.
@@ -7,6 +7,7 @@ import net.afterlifelochie.fontbox.api.data.IBook;
 import net.afterlifelochie.fontbox.api.data.IBookProperties;
 import net.afterlifelochie.fontbox.api.data.IDocument;
 import net.afterlifelochie.fontbox.api.exception.LayoutException;
+import net.afterlifelochie.fontbox.api.font.FontCoverage;
 import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.formatting.layout.CompilerHint;
 import net.afterlifelochie.fontbox.api.formatting.layout.FloatMode;
@@ -104,6 +105,12 @@ public class DocumentWrapper implements IDocument {
         document.push(new CompilerHintElement(hint));
     }
 
+    @Override
+    public void collectCoverage(FontCoverage coverage) {
+        for (IElement element : document.elements)
+            element.collectCoverage(coverage);
+    }
+
     @Override
     public GuiScreen createBookGui(FontboxManager manager, IBookProperties bookProperties) throws IOException, LayoutException {
         PageWriter writer = new PageWriter(bookProperties.getPageProperties(), manager);
@@ -111,6 +118,7 @@ public class DocumentWrapper implements IDocument {
         writer.close();
         BookGUI gui = new BookGUI(bookProperties, manager.tracer());
         gui.changePages(writer.pages(), writer.index());
+        gui.retainFonts(manager, writer.fonts());
         return gui;
     }
 
@@ -119,6 +127,6 @@ public class DocumentWrapper implements IDocument {
         PageWriter writer = new PageWriter(bookProperties.getPageProperties(), manager);
         DocumentProcessor.generatePages(manager.tracer(), document, writer);
         writer.close();
-        return new Book(writer.pages(), writer.index(), bookProperties);
+        return new Book(writer.pages(), writer.index(), bookProperties, manager, writer.fonts());
     }
 }
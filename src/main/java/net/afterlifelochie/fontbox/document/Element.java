@@ -5,7 +5,6 @@ import net.afterlifelochie.fontbox.api.exception.LayoutException;
 import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.formatting.style.TextFormat;
 import net.afterlifelochie.fontbox.api.layout.IElement;
-import net.afterlifelochie.fontbox.api.layout.IPage;
 import net.afterlifelochie.fontbox.api.layout.IPageWriter;
 import net.afterlifelochie.fontbox.api.layout.ObjectBounds;
 import net.afterlifelochie.fontbox.api.tracer.ITracer;
@@ -13,9 +12,11 @@ import net.afterlifelochie.fontbox.layout.PageWriter;
 import net.afterlifelochie.fontbox.layout.components.Line;
 import net.afterlifelochie.fontbox.layout.components.LineWriter;
 import net.afterlifelochie.fontbox.layout.components.Page;
-import net.afterlifelochie.io.StackedPushBackStringReader;
+import net.afterlifelochie.io.StringCursor;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <p>
@@ -78,15 +79,15 @@ public abstract class Element implements IElement {
      *                         out correctly
      */
     protected void boxText(ITracer trace, IPageWriter writer, TextFormat format, FormattedString what, AlignmentMode alignment, IElement realElement) throws IOException, LayoutException {
-        StackedPushBackStringReader reader = new StackedPushBackStringReader(what.string);
+        Words words = new Words(what.string);
         trace.trace("Element.boxText", "startBox");
-        while (reader.available() > 0) {
+        while (words.available() > 0) {
             what.formatter.addDefaultFormat(format);
 
             LineWriter stream = new LineWriter(writer, what.formatter, alignment, realElement);
-            boxText(trace, writer, stream, reader);
-            trace.trace("Element.boxText", "streamRemain", reader.available());
-            if (reader.available() > 0)
+            boxText(trace, writer, stream, words);
+            trace.trace("Element.boxText", "streamRemain", words.available());
+            if (words.available() > 0)
                 writer.next();
         }
         trace.trace("Element.boxText", "endBox");
@@ -94,39 +95,43 @@ public abstract class Element implements IElement {
 
     /**
      * <p>
-     * Attempt to box text from a specified stream onto the page in the bounds
-     * specified. The text on the stream will be read and written into Line[]
-     * objects such that either:
+     * The words of a text, read once before the text is boxed. A word is a
+     * run of characters up to a space, a tab or a null character. A word of
+     * only whitespace ends the line it is read on, and is held as null.
      * </p>
-     * <p>
-     * <ul>
-     * <li>The stream becomes empty; the cursor on the stream is placed at the
-     * end.</li>
-     * <li>No further text can be fit into the region specified by the bounds;
-     * the cursor on the stream is placed at the end of the last full word
-     * written onto the region specified.</li>
-     * </ul>
-     * </p>
-     *
-     * @param trace      The debugging tracer object
-     * @param pageWriter The underlying stream to write onto
-     * @param text       The text stream to read from
-     * @throws IOException     Any exception which occurs when reading from the text stream
-     * @throws LayoutException Any layout problem which prevents the text from being laid
-     *                         out correctly
      */
-    protected void boxText(ITracer trace, IPageWriter pageWriter, LineWriter lineWriter, StackedPushBackStringReader text) throws IOException, LayoutException {
-        main:
-        while (text.available() > 0) {
-            // Put some words on the writer:
-            while (true) {
-                // Push the writer so we can back out
-                text.pushPosition();
-
-                // Build the word:
-                StringBuilder inWord = new StringBuilder();
+    private static final class Words {
+        /**
+         * The words, or null for a line break
+         */
+        final String[] words;
+        /**
+         * The offset of each word in the text, including the space before it
+         */
+        final int[] starts;
+        /**
+         * The index of the first line break at or after each word
+         */
+        final int[] breaks;
+        /**
+         * The length of the text
+         */
+        final int length;
+        /**
+         * The index of the next word to box
+         */
+        int next;
+
+        Words(String text) {
+            List<String> words = new ArrayList<>();
+            List<Integer> starts = new ArrayList<>();
+            StringCursor cursor = new StringCursor(text);
+            StringBuilder inWord = new StringBuilder();
+            while (cursor.available() > 0) {
+                starts.add(cursor.getPosition());
+                inWord.setLength(0);
                 while (true) {
-                    char cz = text.next();
+                    char cz = cursor.next();
                     if (cz == 0)
                         break; // okay, end of stream
 
@@ -136,44 +141,66 @@ public abstract class Element implements IElement {
                     else if (inWord.length() > 0)
                         break; // okay, consider now
                 }
-
-                if (inWord.toString().trim().length() == 0)
-                    break;
-
-                // Consider the word:
-                trace.trace("Element.boxText", "considerWord", inWord.toString());
-                lineWriter.push(inWord.toString(), trace.ignoreInvalidSymbols());
-                ObjectBounds future = lineWriter.pendingBounds();
-                IPage current = pageWriter.current();
-                trace.trace("Element.boxText", "considerCursor", pageWriter.cursor());
-
-                // If we overflow the page, back out last change to fit:
-                if (!current.insidePage(future)) {
-                    trace.trace("Element.boxText", "overflowPage", current.getWidth(), current.getHeight(), future, lineWriter.size());
-                    lineWriter.pop(trace.ignoreInvalidSymbols());
-                    text.popPosition();
-                    // If there are now no words on the writer, then
-                    if (lineWriter.size() == 0)
-                        break main; // nothing fits; break the loop
-                    else
-                        break; // break the local loop
-                } else if (current.intersectsElement(future) != null) {
-                    // We hit another object, so let's undo
-                    trace.trace("Element.boxText", "collideElement", lineWriter.size());
-                    IElement e0 = current.intersectsElement(future);
-                    trace.trace("Element.boxText", "collideHit", e0.bounds().toString(), future.toString());
-                    lineWriter.pop(trace.ignoreInvalidSymbols());
-                    text.popPosition();
-                    if (lineWriter.size() == 0)
-                        break main; // Nothing fits at all where we are; break
-                    else
-                        break; // break the local loop
-                } else {
-                    // Store our work
-                    trace.trace("Element.boxText", "commitWord");
-                    text.commitPosition();
-                }
+                String word = inWord.toString();
+                words.add((word.trim().length() == 0) ? null : word);
+            }
+            this.words = words.toArray(new String[0]);
+            this.starts = new int[starts.size()];
+            this.breaks = new int[starts.size()];
+            for (int i = this.words.length - 1; i >= 0; i--) {
+                this.starts[i] = starts.get(i);
+                if (this.words[i] == null)
+                    this.breaks[i] = i;
+                else
+                    this.breaks[i] = (i + 1 < this.words.length) ? this.breaks[i + 1] : this.words.length;
             }
+            this.length = text.length();
+        }
+
+        /**
+         * Get the number of characters not boxed yet.
+         *
+         * @return The number of characters remaining
+         */
+        int available() {
+            return length - ((next < words.length) ? starts[next] : length);
+        }
+    }
+
+    /**
+     * <p>
+     * Attempt to box words onto the page at the cursor. The words will be
+     * written into Line[] objects such that either:
+     * </p>
+     * <p>
+     * <ul>
+     * <li>No words remain.</li>
+     * <li>No further text can be fit into the region at the cursor; the next
+     * word is the first word which was not written.</li>
+     * </ul>
+     * </p>
+     *
+     * @param trace      The debugging tracer object
+     * @param pageWriter The underlying stream to write onto
+     * @param lineWriter The line writer
+     * @param text       The words to write
+     * @throws IOException     Any exception which occurs when writing to the page
+     * @throws LayoutException Any layout problem which prevents the text from being laid
+     *                         out correctly
+     */
+    private void boxText(ITracer trace, IPageWriter pageWriter, LineWriter lineWriter, Words text) throws IOException, LayoutException {
+        while (text.available() > 0) {
+            // Put as many words as fit on the writer, up to the next break:
+            int end = text.breaks[text.next];
+            trace.trace("Element.boxText", "considerWords", text.next, end, pageWriter.cursor());
+            int fit = lineWriter.fit(text.words, text.next, end, trace.ignoreInvalidSymbols());
+            text.next += fit;
+            if (text.next < end) {
+                trace.trace("Element.boxText", "overflowLine", fit);
+                if (lineWriter.size() == 0)
+                    break; // nothing fits where we are
+            } else if (end < text.words.length)
+                text.next++; // consume the break
 
             // Writer now contains a list of words which fit, so do something
             // useful with that line
@@ -2,6 +2,7 @@ package net.afterlifelochie.fontbox.document;
 
 import net.afterlifelochie.fontbox.api.data.FormattedString;
 import net.afterlifelochie.fontbox.api.exception.LayoutException;
+import net.afterlifelochie.fontbox.api.font.FontCoverage;
 import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.layout.IIndexed;
 import net.afterlifelochie.fontbox.api.layout.IPage;
@@ -39,6 +40,11 @@ public class Heading extends Element {
         writer.cursor().pushDown(10);
     }
 
+    @Override
+    public void collectCoverage(FontCoverage coverage) {
+        coverage.add(text);
+    }
+
     @Override
     public boolean canUpdate() {
         return false;
@@ -2,6 +2,7 @@ package net.afterlifelochie.fontbox.document;
 
 import net.afterlifelochie.fontbox.api.data.FormattedString;
 import net.afterlifelochie.fontbox.api.exception.LayoutException;
+import net.afterlifelochie.fontbox.api.font.FontCoverage;
 import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.layout.IIndexed;
 import net.afterlifelochie.fontbox.api.layout.IPage;
@@ -49,6 +50,11 @@ public class Link extends Element {
         writer.cursor().pushDown(10);
     }
 
+    @Override
+    public void collectCoverage(FontCoverage coverage) {
+        coverage.add(text);
+    }
+
     @Override
     public boolean canUpdate() {
         return false;
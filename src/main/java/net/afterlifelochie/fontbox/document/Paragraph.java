@@ -2,6 +2,7 @@ package net.afterlifelochie.fontbox.document;
 
 import net.afterlifelochie.fontbox.api.data.FormattedString;
 import net.afterlifelochie.fontbox.api.exception.LayoutException;
+import net.afterlifelochie.fontbox.api.font.FontCoverage;
 import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.layout.IIndexed;
 import net.afterlifelochie.fontbox.api.layout.IPage;
@@ -43,6 +44,11 @@ public class Paragraph extends Element {
         writer.cursor().pushDown(page.getProperties().line_height_size);
     }
 
+    @Override
+    public void collectCoverage(FontCoverage coverage) {
+        coverage.add(text);
+    }
+
     @Override
     public boolean canUpdate() {
         return false;
@@ -0,0 +1,377 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.afterlifelochie.fontbox.api.FontboxManager;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+import net.afterlifelochie.fontbox.api.font.IGLFontMetrics;
+import net.afterlifelochie.fontbox.api.font.IGLGlyphMetric;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A chain of fonts which falls back from one font to the next. Each character
+ * resolves to the first font in the chain which has a glyph for it. The result
+ * is kept in a resolution table of character to position in the chain, in
+ * pages of 256 characters; the page of the {@link IGLFont#MIN_CH} to
+ * {@link IGLFont#MAX_CH} range is resolved up front and every other character
+ * is resolved on first lookup, so layout and rendering never walk the chain
+ * per character. If a font in the chain is deleted, its characters fall back
+ * to the next font in the chain with a glyph for them.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLCompositeFont implements IGLFont {
+    /**
+     * The marker of a table entry which has not been resolved yet
+     */
+    private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    /**
+     * Create a composite font from a chain of registered fonts, and register
+     * it.
+     *
+     * @param manager The used manager
+     * @param name    The name of the font, case sensitive
+     * @param fonts   The fonts, in order of preference
+     * @return The composite font
+     */
+    public static IGLFont fromFonts(FontboxManager manager, String name, IGLFont... fonts) {
+        if (manager == null || manager.tracer() == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (name == null)
+            throw new IllegalArgumentException("name may not be null");
+        if (fonts == null || fonts.length == 0)
+            throw new IllegalArgumentException("fonts may not be empty");
+        for (IGLFont font : fonts)
+            if (font == null || manager.fromHandle(font.getHandle()) != font)
+                throw new IllegalArgumentException("fonts must be registered with the manager");
+        GLCompositeFont result = new GLCompositeFont(manager, name, fonts.clone());
+        result.handle = manager.allocateFont(result);
+        manager.tracer().trace("GLCompositeFont.fromFonts", result);
+        return result;
+    }
+
+    /**
+     * Glyph metrics which answer each character from the font it resolves to
+     */
+    private class CompositeMetrics implements IGLFontMetrics {
+        private IGLFontMetrics of(char c) {
+            int face = faceOf(c);
+            IGLFontMetrics metric = (face != -1) ? metricOf(face) : null;
+            return (metric != null) ? metric : first();
+        }
+
+        /**
+         * Get the metrics of the first registered font in the chain, or empty
+         * metrics if every font has been deleted.
+         */
+        private IGLFontMetrics first() {
+            for (int face = 0; face < faces.length; face++) {
+                IGLFontMetrics metric = metricOf(face);
+                if (metric != null)
+                    return metric;
+            }
+            return EMPTY;
+        }
+
+        @Override
+        @Deprecated
+        public Map<Integer, IGLGlyphMetric> getGlyphs() {
+            Map<Integer, IGLGlyphMetric> glyphs = new HashMap<>();
+            for (int face = 0; face < faces.length; face++) {
+                IGLFontMetrics metric = metricOf(face);
+                if (metric != null)
+                    for (Map.Entry<Integer, IGLGlyphMetric> glyph : metric.getGlyphs().entrySet())
+                        glyphs.putIfAbsent(glyph.getKey(), glyph.getValue());
+            }
+            return Collections.unmodifiableMap(glyphs);
+        }
+
+        @Override
+        public boolean hasGlyph(char c) {
+            return faceOf(c) != -1;
+        }
+
+        @Override
+        public int widthOf(char c) {
+            return of(c).widthOf(c);
+        }
+
+        @Override
+        public int heightOf(char c) {
+            return of(c).heightOf(c);
+        }
+
+        @Override
+        public int ascentOf(char c) {
+            return of(c).ascentOf(c);
+        }
+
+        @Override
+        public int uOf(char c) {
+            return of(c).uOf(c);
+        }
+
+        @Override
+        public int vOf(char c) {
+            return of(c).vOf(c);
+        }
+
+        @Override
+        public int kerningOf(char left, char right) {
+            int face = faceOf(left);
+            if (face == -1 || face != faceOf(right))
+                return 0;
+            return of(left).kerningOf(left, right);
+        }
+
+        @Override
+        public boolean isKerningEnabled() {
+            for (IGLFont face : faces)
+                if (isLive(face) && !face.getMetric().isKerningEnabled())
+                    return false;
+            return true;
+        }
+
+        @Override
+        public int texWidthOf(char c) {
+            return of(c).texWidthOf(c);
+        }
+
+        @Override
+        public int texHeightOf(char c) {
+            return of(c).texHeightOf(c);
+        }
+
+        @Override
+        public int texAscentOf(char c) {
+            return of(c).texAscentOf(c);
+        }
+
+        @Override
+        public float getFontImageWidth() {
+            return first().getFontImageWidth();
+        }
+
+        @Override
+        public float getFontImageHeight() {
+            return first().getFontImageHeight();
+        }
+    }
+
+    /**
+     * The metrics of a chain in which every font has been deleted
+     */
+    private static final IGLFontMetrics EMPTY = new IGLFontMetrics() {
+        @Override
+        @Deprecated
+        public Map<Integer, IGLGlyphMetric> getGlyphs() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean hasGlyph(char c) {
+            return false;
+        }
+
+        @Override
+        public int widthOf(char c) {
+            return 0;
+        }
+
+        @Override
+        public int heightOf(char c) {
+            return 0;
+        }
+
+        @Override
+        public int ascentOf(char c) {
+            return 0;
+        }
+
+        @Override
+        public int uOf(char c) {
+            return 0;
+        }
+
+        @Override
+        public int vOf(char c) {
+            return 0;
+        }
+
+        @Override
+        public float getFontImageWidth() {
+            return 1.0f;
+        }
+
+        @Override
+        public float getFontImageHeight() {
+            return 1.0f;
+        }
+    };
+
+    private final FontboxManager manager;
+    private final String name;
+    private final IGLFont[] faces;
+    private final AtomicReferenceArray<int[]> pages = new AtomicReferenceArray<>(256);
+    private final CompositeMetrics metric = new CompositeMetrics();
+    private volatile int handle = NO_HANDLE;
+
+    private GLCompositeFont(FontboxManager manager, String name, IGLFont[] faces) {
+        this.manager = manager;
+        this.name = name;
+        this.faces = faces;
+        for (char c = MIN_CH; c <= MAX_CH; c++)
+            resolved(c);
+    }
+
+    /**
+     * Get the handle of the font a character resolves to.
+     *
+     * @param c The character
+     * @return The handle of the first registered font with a glyph for the
+     * character, or {@link IGLFont#NO_HANDLE} if no font in the chain has one
+     */
+    public int handleOf(char c) {
+        int face = faceOf(c);
+        return (face != -1) ? faces[face].getHandle() : NO_HANDLE;
+    }
+
+    private boolean isLive(IGLFont face) {
+        return manager.fromHandle(face.getHandle()) == face;
+    }
+
+    /**
+     * Get the metrics of a font in the chain.
+     *
+     * @param face The position of the font in the chain
+     * @return The metrics, or null if the font has been deleted
+     */
+    private IGLFontMetrics metricOf(int face) {
+        IGLFontMetrics metric = faces[face].getMetric();
+        return (metric != null && isLive(faces[face])) ? metric : null;
+    }
+
+    /**
+     * Get the position in the chain of the font a character resolves to,
+     * skipping fonts which have been deleted since the character was resolved.
+     *
+     * @param c The character
+     * @return The position of the first registered font with a glyph for the
+     * character, or -1 if there is none
+     */
+    private int faceOf(char c) {
+        int face = resolved(c);
+        if (face == -1 || isLive(faces[face]))
+            return face;
+        for (face++; face < faces.length; face++) {
+            IGLFontMetrics metric = metricOf(face);
+            if (metric != null && metric.hasGlyph(c))
+                return face;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the position in the chain of the first font with a glyph for a
+     * character. Entries are plain int writes of a value which only depends
+     * on the character, so threads racing to resolve the same character store
+     * the same position. Deleted fonts are skipped, and a position found
+     * while any font was skipped is not stored.
+     *
+     * @param c The character
+     * @return The position, or -1 if no font in the chain has a glyph
+     */
+    private int resolved(char c) {
+        int[] page = pages.get(c >>> 8);
+        if (page == null) {
+            int[] fresh = new int[256];
+            Arrays.fill(fresh, UNRESOLVED);
+            pages.compareAndSet(c >>> 8, null, fresh);
+            page = pages.get(c >>> 8);
+        }
+        int resolved = page[c & 0xff];
+        if (resolved == UNRESOLVED) {
+            resolved = -1;
+            boolean complete = true;
+            for (int face = 0; face < faces.length; face++) {
+                IGLFontMetrics metric = metricOf(face);
+                if (metric == null)
+                    complete = false;
+                else if (metric.hasGlyph(c)) {
+                    resolved = face;
+                    break;
+                }
+            }
+            if (complete)
+                page[c & 0xff] = resolved;
+        }
+        return resolved;
+    }
+
+    /**
+     * Get the font which draws a character.
+     *
+     * @param c The character
+     * @return The first registered font in the chain with a glyph for the
+     * character, or null if there is none
+     */
+    @Override
+    public IGLFont resolve(char c) {
+        int face = faceOf(c);
+        return (face != -1) ? faces[face].resolve(c) : null;
+    }
+
+    @Override
+    public Collection<IGLFont> getFaces() {
+        List<IGLFont> result = new ArrayList<>();
+        for (IGLFont face : faces)
+            result.addAll(face.getFaces());
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getHandle() {
+        return handle;
+    }
+
+    /**
+     * Get the texture of the first font in the chain. Glyphs are drawn with
+     * the texture of the font they resolve to.
+     *
+     * @return The 2D texture ID of the first font
+     */
+    @Override
+    public int getTextureId() {
+        return faces[0].getTextureId();
+    }
+
+    @Override
+    public float getScale() {
+        return faces[0].getScale();
+    }
+
+    @Override
+    public IGLFontMetrics getMetric() {
+        return metric;
+    }
+
+    /**
+     * Delete the composite font. The fonts in the chain are not deleted.
+     */
+    @Override
+    public void delete(FontboxManager manager) {
+        manager.deleteFont(this);
+    }
+
+    @Override
+    public String toString() {
+        return "GLCompositeFont { hash: " + System.identityHashCode(this) + ", name: " + name + ", faces: "
+            + faces.length + " }";
+    }
+}
@@ -0,0 +1,130 @@
+package net.afterlifelochie.fontbox.font;
+
+/**
+ * Signed distance field transform for glyph coverage. Coverage is split into
+ * inside and outside at half coverage, the exact Euclidean distance from every
+ * pixel to the nearest pixel on the other side is computed with the separable
+ * lower-envelope transform of Felzenszwalb and Huttenlocher, and the signed
+ * distance is encoded into a byte so that the glyph edge falls at half value.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLDistanceField {
+    private static final float INF = 1.0e20f;
+
+    private final int width, height;
+    private final float[] inside, outside;
+    private final double[] f, d, z;
+    private final int[] v;
+
+    /**
+     * Create a new transform for rasters of up to the specified size. A
+     * transform holds its scratch buffers and must not be shared between
+     * threads.
+     *
+     * @param width  The largest raster width
+     * @param height The largest raster height
+     */
+    public GLDistanceField(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("width and height must be positive");
+        this.width = width;
+        this.height = height;
+        int n = Math.max(width, height);
+        inside = new float[width * height];
+        outside = new float[width * height];
+        f = new double[n];
+        d = new double[n];
+        z = new double[n + 1];
+        v = new int[n];
+    }
+
+    /**
+     * Transform a coverage raster into a distance field.
+     *
+     * @param coverage The coverage raster, one unsigned byte per pixel, row major
+     * @param w        The raster width
+     * @param h        The raster height
+     * @param spread   The distance, in pixels, over which the field falls from
+     *                 full to empty
+     * @param out      The array which receives the encoded field, one unsigned
+     *                 byte per pixel
+     */
+    public void transform(byte[] coverage, int w, int h, int spread, byte[] out) {
+        if (w > width || h > height)
+            throw new IllegalArgumentException("raster larger than transform");
+        if (spread <= 0)
+            throw new IllegalArgumentException("spread must be positive");
+        int size = w * h;
+        for (int i = 0; i < size; i++) {
+            boolean in = (coverage[i] & 0xff) >= 128;
+            inside[i] = in ? INF : 0.0f;
+            outside[i] = in ? 0.0f : INF;
+        }
+        transform2D(inside, w, h);
+        transform2D(outside, w, h);
+        for (int i = 0; i < size; i++)
+            out[i] = (byte) encode(inside[i], outside[i], spread);
+    }
+
+    /**
+     * Encode the squared distances of a pixel into a field value.
+     *
+     * @param inside  The squared distance to the nearest outside pixel, or zero
+     *                if the pixel is outside
+     * @param outside The squared distance to the nearest inside pixel, or zero
+     *                if the pixel is inside
+     * @param spread  The spread of the field
+     * @return The field value, from 0 to 255
+     */
+    public static int encode(float inside, float outside, int spread) {
+        float signed = (inside > 0) ? (float) Math.sqrt(inside) - 0.5f : 0.5f - (float) Math.sqrt(outside);
+        float value = 127.5f + signed * 127.5f / spread;
+        return (int) (Math.max(0.0f, Math.min(255.0f, value)) + 0.5f);
+    }
+
+    private void transform2D(float[] grid, int w, int h) {
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++)
+                f[y] = grid[y * w + x];
+            transform1D(h);
+            for (int y = 0; y < h; y++)
+                grid[y * w + x] = (float) d[y];
+        }
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++)
+                f[x] = grid[y * w + x];
+            transform1D(w);
+            for (int x = 0; x < w; x++)
+                grid[y * w + x] = (float) d[x];
+        }
+    }
+
+    /**
+     * One dimensional squared distance transform of f into d.
+     */
+    private void transform1D(int n) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = -INF;
+        z[1] = INF;
+        for (int q = 1; q < n; q++) {
+            double s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = INF;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q)
+                k++;
+            double dx = q - v[k];
+            d[q] = dx * dx + f[v[k]];
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.afterlifelochie.fontbox.api.FontboxManager;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+import net.afterlifelochie.fontbox.api.font.IGLFontMetrics;
+import net.afterlifelochie.fontbox.api.font.IGLGlyphMetric;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * One size of a distance field typeface. Every size shares the distance field
+ * atlas baked for the typeface; a size only scales the glyph metrics used for
+ * layout, while texture coordinates still address the atlas at its baked size.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLDistanceFieldFont implements IGLFont {
+
+    /**
+     * Create a size of a distance field typeface and register it.
+     *
+     * @param manager The used manager
+     * @param atlas   The distance field atlas font of the typeface
+     * @param px      The font pixel size
+     * @param basePx  The pixel size the atlas was baked at
+     * @return The font at the requested size
+     */
+    public static IGLFont fromAtlas(FontboxManager manager, IGLFont atlas, float px, float basePx) {
+        if (manager == null || manager.tracer() == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (atlas == null)
+            throw new IllegalArgumentException("atlas may not be null");
+        if (px <= 0 || basePx <= 0)
+            throw new IllegalArgumentException("px and basePx must be positive");
+        GLDistanceFieldFont result = new GLDistanceFieldFont(atlas, atlas.getName() + " " + px, px / basePx);
+        result.handle = manager.allocateFont(result);
+        manager.tracer().trace("GLDistanceFieldFont.fromAtlas", result);
+        return result;
+    }
+
+    /**
+     * Glyph metrics of the atlas, scaled for layout
+     */
+    private static class ScaledMetrics implements IGLFontMetrics {
+        private final IGLFontMetrics base;
+        private final float factor;
+
+        ScaledMetrics(IGLFontMetrics base, float factor) {
+            this.base = base;
+            this.factor = factor;
+        }
+
+        private int scale(int value) {
+            return Math.round(value * factor);
+        }
+
+        @Override
+        @Deprecated
+        public Map<Integer, IGLGlyphMetric> getGlyphs() {
+            return base.getGlyphs();
+        }
+
+        @Override
+        public boolean hasGlyph(char c) {
+            return base.hasGlyph(c);
+        }
+
+        @Override
+        public int widthOf(char c) {
+            return scale(base.widthOf(c));
+        }
+
+        @Override
+        public int heightOf(char c) {
+            return scale(base.heightOf(c));
+        }
+
+        @Override
+        public int ascentOf(char c) {
+            return scale(base.ascentOf(c));
+        }
+
+        @Override
+        public int kerningOf(char left, char right) {
+            return scale(base.kerningOf(left, right));
+        }
+
+        @Override
+        public boolean isKerningEnabled() {
+            return base.isKerningEnabled();
+        }
+
+        @Override
+        public int uOf(char c) {
+            return base.uOf(c);
+        }
+
+        @Override
+        public int vOf(char c) {
+            return base.vOf(c);
+        }
+
+        @Override
+        public int texWidthOf(char c) {
+            return base.widthOf(c);
+        }
+
+        @Override
+        public int texHeightOf(char c) {
+            return base.heightOf(c);
+        }
+
+        @Override
+        public int texAscentOf(char c) {
+            return base.ascentOf(c);
+        }
+
+        @Override
+        public int rowOf(char c) {
+            return base.rowOf(c);
+        }
+
+        @Override
+        public int widthAt(int row) {
+            return scale(base.widthAt(row));
+        }
+
+        @Override
+        public int heightAt(int row) {
+            return scale(base.heightAt(row));
+        }
+
+        @Override
+        public int ascentAt(int row) {
+            return scale(base.ascentAt(row));
+        }
+
+        @Override
+        public int uAt(int row) {
+            return base.uAt(row);
+        }
+
+        @Override
+        public int vAt(int row) {
+            return base.vAt(row);
+        }
+
+        @Override
+        public int texWidthAt(int row) {
+            return base.widthAt(row);
+        }
+
+        @Override
+        public int texHeightAt(int row) {
+            return base.heightAt(row);
+        }
+
+        @Override
+        public int texAscentAt(int row) {
+            return base.ascentAt(row);
+        }
+
+        @Override
+        public float getFontImageWidth() {
+            return base.getFontImageWidth();
+        }
+
+        @Override
+        public float getFontImageHeight() {
+            return base.getFontImageHeight();
+        }
+    }
+
+    private final IGLFont atlas;
+    private final String name;
+    private final float factor;
+    private final ScaledMetrics metric;
+    private volatile int handle = NO_HANDLE;
+
+    private GLDistanceFieldFont(IGLFont atlas, String name, float factor) {
+        this.atlas = atlas;
+        this.name = name;
+        this.factor = factor;
+        this.metric = new ScaledMetrics(atlas.getMetric(), factor);
+    }
+
+    /**
+     * Get the distance field atlas font this size draws from.
+     *
+     * @return The atlas font
+     */
+    public IGLFont getAtlas() {
+        return atlas;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getHandle() {
+        return handle;
+    }
+
+    @Override
+    public Collection<IGLFont> getFaces() {
+        return Arrays.asList(this, atlas);
+    }
+
+    @Override
+    public int getTextureId() {
+        return atlas.getTextureId();
+    }
+
+    @Override
+    public float getScale() {
+        return atlas.getScale();
+    }
+
+    @Override
+    public boolean isDistanceField() {
+        return true;
+    }
+
+    @Override
+    public IGLFontMetrics getMetric() {
+        return metric;
+    }
+
+    /**
+     * Delete this size of the typeface. The shared atlas is not deleted.
+     */
+    @Override
+    public void delete(FontboxManager manager) {
+        manager.deleteFont(this);
+    }
+
+    @Override
+    public String toString() {
+        return "GLDistanceFieldFont { hash: " + System.identityHashCode(this) + ", atlas: " + atlas + ", factor: "
+            + factor + " }";
+    }
+}
@@ -0,0 +1,314 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.afterlifelochie.fontbox.api.FontboxManager;
+import net.afterlifelochie.fontbox.api.data.IBookProperties;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+import net.afterlifelochie.fontbox.api.font.IGLFontBuilder;
+import net.afterlifelochie.fontbox.api.tracer.ITracer;
+import net.minecraft.client.renderer.GlStateManager;
+import org.lwjgl.opengl.GL11;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A TTF-backed font with a growable glyph atlas. Glyphs are not baked up
+ * front: the first time layout asks for a character, the glyph is measured and
+ * skyline-packed into the atlas immediately, and its rasterization is queued.
+ * Queued glyphs are drawn and uploaded with one sub-image upload per font when
+ * {@link GLDynamicFont#flushAll()} is called on the render thread before the
+ * next frame.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLDynamicFont implements IGLFont {
+    /**
+     * The width of the atlas
+     */
+    public static final int ATLAS_WIDTH = IGLFontBuilder.RASTER_DIM;
+    /**
+     * The starting height of the atlas
+     */
+    public static final int INITIAL_HEIGHT = 64;
+    /**
+     * The largest height the atlas may grow to
+     */
+    public static final int MAX_HEIGHT = 4096;
+    /**
+     * Fonts with glyphs waiting to be uploaded
+     */
+    private static final Set<GLDynamicFont> dirty = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Draw and upload every queued glyph of every dynamic font. Must be called
+     * on the render thread.
+     */
+    public static void flushAll() {
+        for (GLDynamicFont font : dirty)
+            font.flush();
+    }
+
+    /**
+     * Create a dynamic GLFont from a Java Font object. The font starts with an
+     * empty atlas.
+     *
+     * @param manager The used manager
+     * @param font    The font object
+     * @return The GLFont result
+     */
+    public static IGLFont fromFont(FontboxManager manager, Font font) {
+        if (manager == null || manager.tracer() == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (font == null)
+            throw new IllegalArgumentException("font may not be null");
+        int texIdx = GlStateManager.generateTexture();
+        GlStateManager.bindTexture(texIdx);
+        GlStateManager.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+        GlStateManager.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_ALPHA, ATLAS_WIDTH, INITIAL_HEIGHT, 0, GL11.GL_ALPHA,
+            GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        manager.tracer().trace("GLDynamicFont.fromFont", "texId", texIdx);
+        GLDynamicFont result = new GLDynamicFont(manager.tracer(), font, texIdx, IBookProperties.SCALE);
+        manager.tracer().trace("GLDynamicFont.fromFont", result);
+        result.handle = manager.allocateFont(result);
+        return result;
+    }
+
+    /**
+     * A glyph which has been placed but not yet drawn
+     */
+    private static class PendingGlyph {
+        final TextLayout layout;
+        final float drawX, drawY;
+        final int x, y, width, height;
+
+        PendingGlyph(TextLayout layout, float drawX, float drawY, int x, int y, int width, int height) {
+            this.layout = layout;
+            this.drawX = drawX;
+            this.drawY = drawY;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Glyph metrics which place missing glyphs on first lookup
+     */
+    private class DynamicMetrics extends GLFontMetrics {
+        /**
+         * The rows of the characters looked up so far, in pages of 256
+         * characters: 0 for a character not looked up yet, -1 for one which
+         * cannot be placed, and the row plus one otherwise. Pages are copied
+         * on write and published whole, so lookups never lock.
+         */
+        private volatile int[][] rows = new int[256][];
+
+        DynamicMetrics() {
+            super(ATLAS_WIDTH, INITIAL_HEIGHT);
+        }
+
+        @Override
+        public int rowOf(char c) {
+            int[] page = rows[c >>> 8];
+            int known = (page != null) ? page[c & 0xff] : 0;
+            if (known != 0)
+                return (known > 0) ? known - 1 : -1;
+            synchronized (GLDynamicFont.this) {
+                int row = getGlyphTable().indexOf(c);
+                if (row == -1)
+                    row = place(c);
+                publish(c, row);
+                return row;
+            }
+        }
+
+        private void publish(char c, int row) {
+            int[][] next = rows.clone();
+            int[] page = next[c >>> 8];
+            page = (page != null) ? page.clone() : new int[256];
+            page[c & 0xff] = (row != -1) ? row + 1 : -1;
+            next[c >>> 8] = page;
+            rows = next;
+        }
+    }
+
+    private final ITracer trace;
+    private final Font font;
+    private final FontRenderContext ctx = new FontRenderContext(null, true, false);
+    private final DynamicMetrics metric = new DynamicMetrics();
+    private final BitSet unsupported = new BitSet();
+    private final List<PendingGlyph> pending = new ArrayList<>();
+
+    private String name;
+    private volatile int handle = NO_HANDLE;
+    private float scale;
+    private int textureId;
+
+    private BufferedImage image;
+    private int height = INITIAL_HEIGHT;
+    private boolean resized = false;
+    private final GLSkylinePacker packer = new GLSkylinePacker(ATLAS_WIDTH, MAX_HEIGHT);
+    private final int[] position = new int[2];
+    private final int[] scanline = new int[ATLAS_WIDTH];
+
+    private GLDynamicFont(ITracer trace, Font font, int textureId, float scale) {
+        this.trace = trace;
+        this.font = font;
+        this.name = font.getFontName();
+        this.textureId = textureId;
+        this.scale = scale;
+        this.image = new BufferedImage(ATLAS_WIDTH, INITIAL_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Measure a character and reserve space for it on the atlas.
+     *
+     * @param c The character
+     * @return The row of the glyph, or -1 if the glyph cannot be placed
+     */
+    private int place(char c) {
+        if (unsupported.get(c))
+            return -1;
+        if (textureId == -1 || !font.canDisplay(c)) {
+            unsupported.set(c);
+            return -1;
+        }
+        TextLayout layout = new TextLayout(String.valueOf(c), font, ctx);
+        Rectangle2D rect = layout.getBounds();
+        Rectangle rect0 = layout.getPixelBounds(null, 0, 0);
+        float cx = -rect0.x;
+        int w = (int) Math.ceil(rect.getWidth() + cx);
+        int h = (int) Math.ceil(layout.getAscent() + layout.getDescent());
+        if (!packer.pack(w + GLGlyphBaker.PADDING, h + GLGlyphBaker.PADDING, position)) {
+            trace.warn("GLDynamicFont.place", "Atlas full, cannot place glyph", c, name);
+            unsupported.set(c);
+            return -1;
+        }
+        int x = position[0], y = position[1];
+        int needed = height;
+        while (packer.getUsedHeight() > needed)
+            needed <<= 1;
+        if (needed != height) {
+            height = needed;
+            resized = true;
+            metric.setFontImageSize(ATLAS_WIDTH, height);
+        }
+        metric.getGlyphTable().put(c, w, h, (int) layout.getAscent(), x, y + (int) layout.getAscent());
+        pending.add(new PendingGlyph(layout, x + cx, y + layout.getAscent(), x, y, w, h));
+        dirty.add(this);
+        trace.trace("GLDynamicFont.place", "placeGlyph", c, x, y);
+        return metric.getGlyphTable().indexOf(c);
+    }
+
+    /**
+     * Draw and upload every queued glyph of this font. Must be called on the
+     * render thread.
+     */
+    public synchronized void flush() {
+        dirty.remove(this);
+        if (textureId == -1 || (pending.isEmpty() && !resized))
+            return;
+        if (image.getHeight() != height) {
+            BufferedImage grown = new BufferedImage(ATLAS_WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = grown.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            image = grown;
+        }
+
+        int x0 = ATLAS_WIDTH, y0 = height, x1 = 0, y1 = 0;
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setColor(Color.WHITE);
+        for (PendingGlyph glyph : pending) {
+            glyph.layout.draw(graphics, glyph.drawX, glyph.drawY);
+            x0 = Math.min(x0, glyph.x);
+            y0 = Math.min(y0, glyph.y);
+            x1 = Math.max(x1, Math.min(ATLAS_WIDTH, glyph.x + glyph.width + GLGlyphBaker.PADDING));
+            y1 = Math.max(y1, Math.min(height, glyph.y + glyph.height + GLGlyphBaker.PADDING));
+        }
+        graphics.dispose();
+        trace.trace("GLDynamicFont.flush", name, pending.size(), resized);
+        pending.clear();
+
+        GlStateManager.bindTexture(textureId);
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+        if (resized) {
+            GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_ALPHA, ATLAS_WIDTH, height, 0, GL11.GL_ALPHA,
+                GL11.GL_UNSIGNED_BYTE, alpha(0, 0, ATLAS_WIDTH, height));
+            resized = false;
+        } else if (x1 > x0 && y1 > y0) {
+            GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, x0, y0, x1 - x0, y1 - y0, GL11.GL_ALPHA, GL11.GL_UNSIGNED_BYTE,
+                alpha(x0, y0, x1 - x0, y1 - y0));
+        }
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+    }
+
+    /**
+     * Read a region of the atlas coverage into the shared upload buffer.
+     */
+    private ByteBuffer alpha(int x, int y, int w, int h) {
+        ByteBuffer buffer = GLFont.uploadBuffer(w * h);
+        WritableRaster alpha = image.getAlphaRaster();
+        for (int row = 0; row < h; row++) {
+            alpha.getSamples(x, y + row, w, 1, 0, scanline);
+            for (int col = 0; col < w; col++)
+                buffer.put((byte) scanline[col]);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getHandle() {
+        return handle;
+    }
+
+    @Override
+    public int getTextureId() {
+        return textureId;
+    }
+
+    @Override
+    public float getScale() {
+        return scale;
+    }
+
+    @Override
+    public GLFontMetrics getMetric() {
+        return metric;
+    }
+
+    @Override
+    public synchronized void delete(FontboxManager manager) {
+        manager.deleteFont(this);
+        dirty.remove(this);
+        GlStateManager.deleteTexture(textureId);
+        textureId = -1;
+        pending.clear();
+        image = null;
+    }
+
+    @Override
+    public String toString() {
+        return "GLDynamicFont { hash: " + System.identityHashCode(this) + ", texture: " + textureId + ", glyphs: "
+            + metric.getGlyphTable().size() + ", height: " + height + " }";
+    }
+}
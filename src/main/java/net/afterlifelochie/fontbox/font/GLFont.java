@@ -7,12 +7,12 @@ import net.afterlifelochie.fontbox.api.font.IGLFont;
 import net.minecraft.client.renderer.GlStateManager;
 import org.lwjgl.opengl.GL11;
 
-import java.awt.*;
-import java.awt.color.ColorSpace;
-import java.awt.image.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Hashtable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Represents a Font object for OpenGL.
@@ -20,9 +20,34 @@ import java.util.Hashtable;
  * @author AfterLifeLochie
  */
 public class GLFont implements IGLFont {
+    /**
+     * The direct buffer reused for every texture upload
+     */
+    private static ByteBuffer uploadBuffer;
+
+    /**
+     * Get the shared direct buffer used for texture uploads, cleared and
+     * limited to the requested size. The buffer is only valid until the next
+     * call; uploads must happen on the render thread.
+     *
+     * @param bytes The number of bytes required
+     * @return The upload buffer
+     */
+    static ByteBuffer uploadBuffer(int bytes) {
+        if (uploadBuffer == null || uploadBuffer.capacity() < bytes) {
+            int capacity = Math.max(bytes, 1 << 16);
+            uploadBuffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+        uploadBuffer.clear();
+        uploadBuffer.limit(bytes);
+        return uploadBuffer;
+    }
+
     /**
      * Create a GLFont from an image buffer of a specified size with a specified
-     * metric map.
+     * metric map. Images where every visible pixel has the same colour are
+     * uploaded as a single-channel coverage texture; any other image is
+     * uploaded as RGBA.
      *
      * @param manager The used manager
      * @param name    The name of the font
@@ -43,46 +68,231 @@ public class GLFont implements IGLFont {
             throw new IllegalArgumentException("image may not be null");
         if (metric == null)
             throw new IllegalArgumentException("metric may not be null");
-        ColorModel glAlphaColorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[]{
-            8, 8, 8, 8}, true, false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
-        WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, 4, null);
-        BufferedImage texImage = new BufferedImage(glAlphaColorModel, raster, true, new Hashtable<>());
-        Graphics g = texImage.getGraphics();
-        g.setColor(new Color(0f, 0f, 0f, 0f));
-        g.fillRect(0, 0, width, height);
-        g.drawImage(image, 0, 0, null);
-
-        byte[] data = ((DataBufferByte) texImage.getRaster().getDataBuffer()).getData();
-
-        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
-        buffer.order(ByteOrder.nativeOrder());
-        buffer.put(data, 0, data.length);
-        buffer.flip();
+        if (isCoverage(image, width, height))
+            return fromRaster(manager, name, GL11.GL_ALPHA, toAlphaRaster(image, width, height), width, height, metric);
+        return fromRaster(manager, name, GL11.GL_RGBA, toRaster(image, width, height), width, height, metric);
+    }
+
+    /**
+     * Check if an image holds only coverage, that is, every pixel which is not
+     * fully transparent has the same colour.
+     *
+     * @param image  The buffered image
+     * @param width  The width of the image, absolute pixels
+     * @param height The height of the image, absolute pixels
+     * @return If the image can be uploaded as a single-channel texture
+     */
+    public static boolean isCoverage(BufferedImage image, int width, int height) {
+        if (image.getAlphaRaster() == null)
+            return false;
+        int[] row = new int[width];
+        int colour = -1;
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int pixel : row) {
+                if ((pixel >>> 24) == 0)
+                    continue;
+                if (colour == -1)
+                    colour = pixel & 0xFFFFFF;
+                else if ((pixel & 0xFFFFFF) != colour)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the alpha channel of an image into a tightly packed single-channel
+     * raster suitable for uploading with {@link GLFont#fromRaster}.
+     *
+     * @param image  The buffered image
+     * @param width  The width of the image, absolute pixels
+     * @param height The height of the image, absolute pixels
+     * @return The alpha raster, one byte per pixel
+     */
+    public static byte[] toAlphaRaster(BufferedImage image, int width, int height) {
+        WritableRaster alpha = image.getAlphaRaster();
+        if (alpha == null)
+            throw new IllegalArgumentException("image has no alpha channel");
+        byte[] data = new byte[width * height];
+        int[] row = new int[width];
+        for (int y = 0, k = 0; y < height; y++) {
+            alpha.getSamples(0, y, width, 1, 0, row);
+            for (int x = 0; x < width; x++)
+                data[k++] = (byte) row[x];
+        }
+        return data;
+    }
+
+    /**
+     * Convert an image buffer into a tightly packed RGBA byte raster suitable
+     * for uploading with {@link GLFont#fromRaster}.
+     *
+     * @param image  The buffered image
+     * @param width  The width of the image, absolute pixels
+     * @param height The height of the image, absolute pixels
+     * @return The RGBA raster, four bytes per pixel
+     */
+    public static byte[] toRaster(BufferedImage image, int width, int height) {
+        byte[] data = new byte[width * height * 4];
+        int[] row = new int[width];
+        for (int y = 0, k = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int pixel : row) {
+                data[k++] = (byte) (pixel >> 16);
+                data[k++] = (byte) (pixel >> 8);
+                data[k++] = (byte) pixel;
+                data[k++] = (byte) (pixel >>> 24);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Create a GLFont from a packed RGBA raster of a specified size with a
+     * specified metric map. No AWT imaging is performed.
+     *
+     * @param manager The used manager
+     * @param name    The name of the font
+     * @param data    The RGBA raster, four bytes per pixel
+     * @param width   The width of the raster, absolute pixels
+     * @param height  The height of the raster, absolute pixels
+     * @param metric  The font metric map
+     * @return The GLFont result
+     * @throws FontException Any exception which occurs when transforming the raster into
+     *                       a GLFont container.
+     */
+    public static IGLFont fromRaster(FontboxManager manager, String name, byte[] data, int width, int height, GLFontMetrics metric) throws FontException {
+        return fromRaster(manager, name, GL11.GL_RGBA, data, width, height, metric);
+    }
+
+    /**
+     * Create a GLFont from a packed raster of a specified size and format with
+     * a specified metric map. No AWT imaging is performed. Single-channel
+     * rasters take their colour from the vertex colour when drawn.
+     *
+     * @param manager The used manager
+     * @param name    The name of the font
+     * @param format  The raster format, either GL_ALPHA or GL_RGBA
+     * @param data    The raster, one or four bytes per pixel
+     * @param width   The width of the raster, absolute pixels
+     * @param height  The height of the raster, absolute pixels
+     * @param metric  The font metric map
+     * @return The GLFont result
+     * @throws FontException Any exception which occurs when transforming the raster into
+     *                       a GLFont container.
+     */
+    public static IGLFont fromRaster(FontboxManager manager, String name, int format, byte[] data, int width, int height, GLFontMetrics metric) throws FontException {
+        GLFont font = create(manager, name, format, data, width, height, metric);
+        font.handle = manager.allocateFont(font);
+        return font;
+    }
 
+    /**
+     * Upload a prepared atlas for a font registered in the GLFont's place. The
+     * GLFont is not registered itself; uses of its texture are recorded
+     * against the owner.
+     *
+     * @param manager The used manager
+     * @param owner   The registered font which draws with the texture
+     * @param entry   The prepared atlas
+     * @param metric  The font metric map
+     * @return The GLFont result
+     * @throws FontException Any exception which occurs when transforming the raster into
+     *                       a GLFont container.
+     */
+    static GLFont fromOwner(FontboxManager manager, IGLFont owner, GLFontAtlasCache.Entry entry, GLFontMetrics metric) throws FontException {
+        GLFont font = create(manager, owner.getName(), entry.format, entry.raster, entry.width, entry.height, metric);
+        font.owner = owner;
+        return font;
+    }
+
+    private static GLFont create(FontboxManager manager, String name, int format, byte[] data, int width, int height, GLFontMetrics metric) throws FontException {
+        if (manager == null || manager.tracer() == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (name == null)
+            throw new IllegalArgumentException("name may not be null");
+        if (data == null)
+            throw new IllegalArgumentException("data may not be null");
+        if (metric == null)
+            throw new IllegalArgumentException("metric may not be null");
+        if (format != GL11.GL_ALPHA && format != GL11.GL_RGBA)
+            throw new FontException(String.format("Unsupported raster format %s", format));
+        int stride = (format == GL11.GL_ALPHA) ? 1 : 4;
+        if (data.length != width * height * stride)
+            throw new FontException(String.format("Raster size %s does not match %s x %s", data.length, width, height));
 
         int texIdx = GlStateManager.generateTexture();
         GlStateManager.bindTexture(texIdx);
         GlStateManager.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
         GlStateManager.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
-        GlStateManager.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width, height, 0, GL11.GL_RGBA,
-            GL11.GL_UNSIGNED_BYTE, buffer.asIntBuffer());
-        manager.tracer().trace("GLFont.fromBuffer", "texId", texIdx);
-        GLFont font = new GLFont(name, texIdx, IBookProperties.SCALE, metric);
-        manager.tracer().trace("GLFont.fromBuffer", font);
-        manager.allocateFont(font);
+        upload(texIdx, format, data, width, height);
+        manager.tracer().trace("GLFont.fromRaster", "texId", texIdx, (format == GL11.GL_ALPHA) ? "alpha" : "rgba");
+        GLFont font = new GLFont(manager, name, texIdx, IBookProperties.SCALE, metric, format, width, height);
+        manager.tracer().trace("GLFont.fromRaster", font);
         return font;
     }
 
+    /**
+     * Upload a raster into an existing texture.
+     */
+    private static void upload(int texIdx, int format, byte[] data, int width, int height) {
+        ByteBuffer buffer = uploadBuffer(data.length);
+        buffer.put(data, 0, data.length);
+        buffer.flip();
+        GlStateManager.bindTexture(texIdx);
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, format, width, height, 0, format, GL11.GL_UNSIGNED_BYTE, buffer);
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+    }
+
+    /**
+     * A source which can produce the atlas of a font again after its texture
+     * has been evicted
+     */
+    public interface Source {
+        /**
+         * Produce the atlas. Called on the font loading pool when restoring an
+         * evicted texture, and must not touch OpenGL.
+         *
+         * @return The atlas raster and metrics
+         * @throws FontException Any exception which occurs when producing the atlas
+         */
+        GLFontAtlasCache.Entry load() throws FontException;
+    }
+
+    private final FontboxManager manager;
     private String name;
+    private volatile int handle = NO_HANDLE;
     private float scale;
     private int textureId;
     private GLFontMetrics metric;
+    private int format, width, height;
+    private Source source;
+    private boolean evicted = false;
+    private boolean restoring = false;
+    private IGLFont owner = this;
 
-    private GLFont(String name, int textureId, float scale, GLFontMetrics metric) {
+    private GLFont(FontboxManager manager, String name, int textureId, float scale, GLFontMetrics metric, int format,
+                   int width, int height) {
+        this.manager = manager;
         this.name = name;
         this.textureId = textureId;
         this.scale = scale;
         this.metric = metric;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Set the source the font's atlas can be produced from again. Fonts
+     * without a source are never evicted.
+     *
+     * @param source The atlas source
+     */
+    public void setSource(Source source) {
+        this.source = source;
     }
 
     /**
@@ -94,15 +304,89 @@ public class GLFont implements IGLFont {
         return name;
     }
 
+    @Override
+    public int getHandle() {
+        return handle;
+    }
+
     /**
-     * Get the OpenGL texture ID for this font.
+     * Get the OpenGL texture ID for this font. If the texture has been
+     * evicted, its atlas is produced again on the font loading pool and
+     * uploaded from the upload queue; until then the texture is blank, so the
+     * font draws nothing.
      *
      * @return The 2D texture ID for the font
      */
     public int getTextureId() {
+        if (textureId == -1)
+            return -1;
+        if (evicted)
+            restore();
+        else
+            manager.markUsed(owner, false);
         return textureId;
     }
 
+    @Override
+    public long getTextureBytes() {
+        if (textureId == -1 || evicted)
+            return 0;
+        return (long) width * height * ((format == GL11.GL_ALPHA) ? 1 : 4);
+    }
+
+    /**
+     * Release the texture memory of the font. The texture object is kept, so
+     * the texture ID stays valid and display lists which bind it do not need
+     * to be rebuilt.
+     */
+    @Override
+    public boolean evict() {
+        if (source == null || evicted || textureId == -1)
+            return false;
+        upload(textureId, format, new byte[(format == GL11.GL_ALPHA) ? 1 : 4], 1, 1);
+        evicted = true;
+        manager.tracer().trace("GLFont.evict", name, textureId);
+        return true;
+    }
+
+    /**
+     * Start restoring the evicted texture, unless a restore is running. The
+     * use of the font is recorded once the texture is uploaded again.
+     */
+    private void restore() {
+        if (restoring || source == null)
+            return;
+        restoring = true;
+        Source from = source;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return from.load();
+            } catch (FontException e) {
+                throw new CompletionException(e);
+            }
+        }, FontboxManager.loadExecutor()).thenCompose(entry -> FontboxManager.queueUpload(() -> {
+            restoring = false;
+            if (textureId == -1)
+                return null;
+            upload(textureId, entry.format, entry.raster, entry.width, entry.height);
+            format = entry.format;
+            width = entry.width;
+            height = entry.height;
+            evicted = false;
+            manager.tracer().trace("GLFont.restore", name, textureId);
+            manager.markUsed(owner, true);
+            return null;
+        })).exceptionally(t -> {
+            FontboxManager.queueUpload(() -> {
+                restoring = false;
+                source = null;
+                manager.tracer().warn("GLFont.restore", "Cannot restore evicted font", name, t);
+                return null;
+            });
+            return null;
+        });
+    }
+
     /**
      * Get the OpenGL font scale for this font.
      *
@@ -0,0 +1,259 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+import net.afterlifelochie.fontbox.api.tracer.ITracer;
+import org.lwjgl.opengl.GL11;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * Persistent cache of baked font atlases. Each entry holds the raw atlas
+ * raster, its texture format and the binary glyph metrics of one baked font,
+ * keyed by a digest of the source font bytes and every parameter which
+ * affects the bake. A warm entry can be uploaded directly without touching
+ * AWT.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLFontAtlasCache {
+    /**
+     * The version of the baking process. Must be incremented whenever the
+     * atlas or metrics produced by {@link GLFontBuilder} change, so that stale
+     * entries are never loaded.
+     */
+    public static final int VERSION = 6;
+
+    /**
+     * The default size limit of the cache, in bytes
+     */
+    public static final long DEFAULT_LIMIT = 64L * 1024L * 1024L;
+
+    private static final int MAGIC = 0x46424158; // FBAX
+    private static final String SUFFIX = ".fba";
+
+    /**
+     * A baked atlas entry
+     */
+    public static class Entry {
+        public final String name;
+        public final int format;
+        public final int width, height;
+        public final byte[] raster;
+        public final GLFontMetrics metric;
+
+        public Entry(String name, int format, int width, int height, byte[] raster, GLFontMetrics metric) {
+            this.name = name;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.raster = raster;
+            this.metric = metric;
+        }
+    }
+
+    private final File directory;
+    private long limit = DEFAULT_LIMIT;
+
+    /**
+     * Create a new atlas cache in the specified directory. The directory is
+     * created when the first entry is stored.
+     *
+     * @param directory The cache directory
+     */
+    public GLFontAtlasCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Set the size limit of the cache. When the cache grows past the limit,
+     * the least recently used entries are removed. A limit of zero or less
+     * disables the cache.
+     *
+     * @param limit The size limit, in bytes
+     */
+    public void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Get the size limit of the cache.
+     *
+     * @return The size limit, in bytes
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Compute the cache key of a font bake.
+     *
+     * @param source The source font file bytes
+     * @param params Every other parameter which affects the baked output
+     * @return The cache key
+     */
+    public static String key(byte[] source, float... params) {
+        return key(source, null, params);
+    }
+
+    /**
+     * Compute the cache key of a bake of a subset of a font's characters.
+     *
+     * @param source The source font file bytes
+     * @param subset The baked code points, or null if the default range is baked
+     * @param params Every other parameter which affects the baked output
+     * @return The cache key
+     */
+    public static String key(byte[] source, BitSet subset, float... params) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(source);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(VERSION);
+            out.writeInt(GLGlyphBaker.PADDING);
+            out.writeInt(GLGlyphBaker.MAX_DIM);
+            out.writeChar(IGLFont.MIN_CH);
+            out.writeChar(IGLFont.MAX_CH);
+            out.writeInt(params.length);
+            for (float param : params)
+                out.writeFloat(param);
+            byte[] subsetBytes = (subset != null) ? subset.toByteArray() : new byte[0];
+            out.writeBoolean(subset != null);
+            out.writeInt(subsetBytes.length);
+            out.write(subsetBytes);
+            out.flush();
+            digest.update(bytes.toByteArray());
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest())
+                key.append(String.format("%02x", b));
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("Cannot compute atlas cache key", e);
+        }
+    }
+
+    private File fileOf(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    /**
+     * Load an entry from the cache. Entries which cannot be read are removed.
+     *
+     * @param trace The debugging tracer object
+     * @param key   The cache key
+     * @return The cached entry, or null if there is no usable entry
+     */
+    public Entry load(ITracer trace, String key) {
+        if (limit <= 0)
+            return null;
+        File file = fileOf(key);
+        if (!file.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Stale or foreign atlas cache entry");
+            String name = in.readUTF();
+            int format = in.readInt();
+            int width = in.readInt(), height = in.readInt();
+            int length = in.readInt();
+            long expected = (long) width * height * ((format == GL11.GL_ALPHA) ? 1 : 4);
+            if (width <= 0 || height <= 0 || length != expected || length > file.length())
+                throw new IOException("Corrupt atlas cache entry");
+            byte[] raster = new byte[length];
+            in.readFully(raster);
+            GLFontMetrics metric = GLFontMetrics.fromBinary(trace, in);
+            file.setLastModified(System.currentTimeMillis());
+            trace.trace("GLFontAtlasCache.load", "hit", key);
+            return new Entry(name, format, width, height, raster, metric);
+        } catch (IOException ioex) {
+            trace.warn("GLFontAtlasCache.load", "Discarding unreadable atlas cache entry", key, ioex);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Store an entry in the cache, then trim the cache to the size limit.
+     * Failure to write the cache is not fatal.
+     *
+     * @param trace The debugging tracer object
+     * @param key   The cache key
+     * @param entry The entry to store
+     */
+    public void store(ITracer trace, String key, Entry entry) {
+        if (limit <= 0)
+            return;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            trace.warn("GLFontAtlasCache.store", "Cannot create atlas cache directory", directory);
+            return;
+        }
+        File file = fileOf(key);
+        File temp;
+        try {
+            temp = File.createTempFile(key, ".tmp", directory);
+        } catch (IOException ioex) {
+            trace.warn("GLFontAtlasCache.store", "Cannot create atlas cache entry", key, ioex);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(entry.name);
+            out.writeInt(entry.format);
+            out.writeInt(entry.width);
+            out.writeInt(entry.height);
+            out.writeInt(entry.raster.length);
+            out.write(entry.raster);
+            entry.metric.writeBinary(out);
+        } catch (IOException ioex) {
+            trace.warn("GLFontAtlasCache.store", "Cannot write atlas cache entry", key, ioex);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+        }
+        trace.trace("GLFontAtlasCache.store", key, file.length());
+        trim(trace);
+    }
+
+    /**
+     * Remove the least recently used entries until the cache fits inside the
+     * size limit.
+     *
+     * @param trace The debugging tracer object
+     */
+    public void trim(ITracer trace) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null || limit <= 0)
+            return;
+        long total = 0;
+        for (File file : files)
+            total += file.length();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && total > limit; i++) {
+            total -= files[i].length();
+            trace.trace("GLFontAtlasCache.trim", "evict", files[i].getName());
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Remove every entry from the cache.
+     */
+    public void invalidate() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX) || name.endsWith(".tmp"));
+        if (files != null)
+            for (File file : files)
+                file.delete();
+    }
+}
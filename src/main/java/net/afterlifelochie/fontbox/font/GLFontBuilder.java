@@ -6,31 +6,155 @@ import net.afterlifelochie.fontbox.api.font.IGLFont;
 import net.afterlifelochie.fontbox.api.font.IGLFontBuilder;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.resources.IResource;
+import net.minecraft.client.resources.IResourceManager;
+import net.minecraft.client.resources.IResourceManagerReloadListener;
 import net.minecraft.util.ResourceLocation;
+import org.lwjgl.opengl.GL11;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
-import java.awt.font.TextLayout;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class GLFontBuilder implements IGLFontBuilder, IResourceManagerReloadListener {
+    /**
+     * The baked atlas cache, created on first use
+     */
+    private GLFontAtlasCache atlasCache;
+    /**
+     * The size limit to apply to the baked atlas cache
+     */
+    private long atlasCacheLimit = GLFontAtlasCache.DEFAULT_LIMIT;
+    /**
+     * The atlas font names of the distance field typefaces baked so far
+     */
+    private final ConcurrentHashMap<ResourceLocation, String> distanceFields = new ConcurrentHashMap<>();
+    /**
+     * The parsed TTF typefaces, shared by every size and mode
+     */
+    private final GLTypefaceCache typefaces = new GLTypefaceCache(GLFontBuilder::readResource);
+
+    private synchronized GLFontAtlasCache atlasCache() {
+        if (atlasCache == null) {
+            File root = new File(Minecraft.getMinecraft().mcDataDir, "fontbox");
+            atlasCache = new GLFontAtlasCache(new File(root, "atlas-cache"));
+            atlasCache.setLimit(atlasCacheLimit);
+        }
+        return atlasCache;
+    }
+
+    @Override
+    public synchronized void setAtlasCacheLimit(long bytes) {
+        atlasCacheLimit = bytes;
+        if (atlasCache != null)
+            atlasCache.setLimit(bytes);
+    }
+
+    @Override
+    public void clearAtlasCache() {
+        atlasCache().invalidate();
+        typefaces.invalidate();
+    }
+
+    /**
+     * Drop the parsed typefaces when resources are reloaded, so fonts created
+     * afterwards read the TTF files of the new resource packs.
+     *
+     * @param resourceManager The reloaded resource manager
+     */
+    @Override
+    public void onResourceManagerReload(IResourceManager resourceManager) {
+        typefaces.invalidate();
+    }
 
-public class GLFontBuilder implements IGLFontBuilder {
     @Override
     public IGLFont fromTTF(FontboxManager manager, float px, ResourceLocation ttf) throws FontException {
+        checkTTF(manager, ttf);
+        return upload(manager, "GLFont.fromTTF", () -> prepareTTF(manager, px, ttf));
+    }
+
+    @Override
+    public IGLFont fromTTF(FontboxManager manager, float px, ResourceLocation ttf, BitSet subset) throws FontException {
+        checkTTF(manager, ttf);
+        if (subset == null)
+            throw new IllegalArgumentException("subset may not be null");
+        BitSet glyphs = (BitSet) subset.clone();
+        return upload(manager, "GLFont.fromTTF", () -> prepareTTF(manager, px, ttf, glyphs));
+    }
+
+    @Override
+    public IGLFont[] fromTTF(FontboxManager manager, float[] sizes, ResourceLocation ttf) throws FontException {
+        checkTTF(manager, ttf);
+        if (sizes == null || sizes.length == 0)
+            throw new IllegalArgumentException("sizes may not be empty");
+        List<CompletableFuture<GLFontAtlasCache.Entry>> prepared = new ArrayList<>();
+        for (float px : sizes)
+            prepared.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return prepareTTF(manager, px, ttf);
+                } catch (FontException e) {
+                    throw new CompletionException(e);
+                }
+            }, FontboxManager.loadExecutor()));
+        IGLFont[] fonts = new IGLFont[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            float px = sizes[i];
+            GLFontAtlasCache.Entry entry;
+            try {
+                entry = prepared.get(i).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof FontException)
+                    throw (FontException) e.getCause();
+                throw e;
+            }
+            fonts[i] = upload(manager, "GLFont.fromTTF", entry, () -> prepareTTF(manager, px, ttf));
+        }
+        return fonts;
+    }
+
+    @Override
+    public CompletableFuture<IGLFont> loadFontAsync(FontboxManager manager, float px, ResourceLocation ttf) {
+        checkTTF(manager, ttf);
+        return loadAsync(manager, "GLFont.fromTTF", () -> prepareTTF(manager, px, ttf));
+    }
+
+    private static void checkTTF(FontboxManager manager, ResourceLocation ttf) {
         if (manager == null || manager.tracer() == null)
             throw new IllegalArgumentException("trace may not be null");
         if (ttf == null)
             throw new IllegalArgumentException("ttf may not be null");
+    }
+
+    private GLFontAtlasCache.Entry prepareTTF(FontboxManager manager, float px, ResourceLocation ttf) throws FontException {
+        return prepareTTF(manager, px, ttf, null);
+    }
+
+    /**
+     * Read a TTF file and bake it, or fetch the baked atlas from the cache.
+     * The typeface is read and parsed at most once for every size. Does not
+     * touch OpenGL.
+     */
+    private GLFontAtlasCache.Entry prepareTTF(FontboxManager manager, float px, ResourceLocation ttf, BitSet subset) throws FontException {
         try {
-            IResource metricResource = Minecraft.getMinecraft().getResourceManager().getResource(ttf);
-            InputStream stream = metricResource.getInputStream();
-            if (stream == null)
-                throw new IOException("Could not open TTF file.");
-            Font sysfont = Font.createFont(Font.TRUETYPE_FONT, stream);
-            manager.tracer().trace("GLFont.fromTTF", sysfont.getName());
-            return fromFont(manager, sysfont.deriveFont(px));
+            GLTypefaceCache.Typeface typeface = typefaces.get(ttf);
+            String key = GLFontAtlasCache.key(typeface.data, subset, px);
+            GLFontAtlasCache.Entry entry = atlasCache().load(manager.tracer(), key);
+            if (entry == null) {
+                Font sysfont = typeface.derive(px);
+                manager.tracer().trace("GLFont.fromTTF", sysfont.getName());
+                entry = bake(manager, sysfont, subset);
+                atlasCache().store(manager.tracer(), key, entry);
+            }
+            return entry;
         } catch (IOException ioex) {
             manager.tracer().trace("GLFont.fromTTF", ioex);
             throw new FontException("Can't perform I/O operation!", ioex);
@@ -40,8 +164,125 @@ public class GLFontBuilder implements IGLFontBuilder {
         }
     }
 
+    @Override
+    public IGLFont fromTTFMetrics(FontboxManager manager, float px, ResourceLocation ttf) throws FontException {
+        checkTTF(manager, ttf);
+        try {
+            GLTypefaceCache.Typeface typeface = typefaces.get(ttf);
+            GLFontAtlasCache.Entry entry = atlasCache().load(manager.tracer(), GLFontAtlasCache.key(typeface.data, px));
+            GLFont.Source source = () -> prepareTTF(manager, px, ttf);
+            if (entry != null)
+                return GLMetricsFont.fromMetrics(manager, entry.name, entry.metric, source);
+            Font sysfont = typeface.derive(px);
+            manager.tracer().trace("GLFont.fromTTFMetrics", sysfont.getName());
+            return GLMetricsFont.fromFont(manager, sysfont, source);
+        } catch (IOException ioex) {
+            manager.tracer().trace("GLFont.fromTTFMetrics", ioex);
+            throw new FontException("Can't perform I/O operation!", ioex);
+        } catch (FontFormatException ffe) {
+            manager.tracer().trace("GLFont.fromTTFMetrics", ffe);
+            throw new FontException("Invalid TTF file!", ffe);
+        }
+    }
+
+    @Override
+    public IGLFont fromDynamicTTF(FontboxManager manager, float px, ResourceLocation ttf) throws FontException {
+        if (manager == null || manager.tracer() == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (ttf == null)
+            throw new IllegalArgumentException("ttf may not be null");
+        try {
+            Font sysfont = typefaces.get(ttf).derive(px);
+            manager.tracer().trace("GLFont.fromDynamicTTF", sysfont.getName());
+            return fromDynamicFont(manager, sysfont);
+        } catch (IOException ioex) {
+            manager.tracer().trace("GLFont.fromDynamicTTF", ioex);
+            throw new FontException("Can't perform I/O operation!", ioex);
+        } catch (FontFormatException ffe) {
+            manager.tracer().trace("GLFont.fromDynamicTTF", ffe);
+            throw new FontException("Invalid TTF file!", ffe);
+        }
+    }
+
+    @Override
+    public IGLFont fromDistanceFieldTTF(FontboxManager manager, float px, ResourceLocation ttf) throws FontException {
+        checkTTF(manager, ttf);
+        if (px <= 0)
+            throw new IllegalArgumentException("px must be positive");
+        String name = distanceFields.get(ttf);
+        IGLFont atlas = (name != null) ? manager.fromName(name) : null;
+        if (atlas == null) {
+            atlas = upload(manager, "GLFont.fromDistanceFieldTTF", () -> prepareDistanceField(manager, ttf));
+            distanceFields.put(ttf, atlas.getName());
+        }
+        return GLDistanceFieldFont.fromAtlas(manager, atlas, px, SDF_BASE_PX);
+    }
+
+    /**
+     * Read a TTF file and bake its distance field atlas, or fetch the baked
+     * atlas from the cache. Does not touch OpenGL.
+     */
+    private GLFontAtlasCache.Entry prepareDistanceField(FontboxManager manager, ResourceLocation ttf) throws FontException {
+        try {
+            GLTypefaceCache.Typeface typeface = typefaces.get(ttf);
+            String key = GLFontAtlasCache.key(typeface.data, SDF_BASE_PX, SDF_SPREAD);
+            GLFontAtlasCache.Entry entry = atlasCache().load(manager.tracer(), key);
+            if (entry == null) {
+                Font sysfont = typeface.derive(SDF_BASE_PX);
+                manager.tracer().trace("GLFont.fromDistanceFieldTTF", sysfont.getName());
+                GLGlyphBaker.Result result = new GLGlyphBaker(manager.tracer(), sysfont, SDF_SPREAD).bake(true);
+                int width = result.image.getWidth(), height = result.image.getHeight();
+                entry = new GLFontAtlasCache.Entry(sysfont.getFontName() + " SDF", GL11.GL_ALPHA, width, height,
+                    GLFont.toAlphaRaster(result.image, width, height), result.metric);
+                atlasCache().store(manager.tracer(), key, entry);
+            }
+            return entry;
+        } catch (IOException ioex) {
+            manager.tracer().trace("GLFont.fromDistanceFieldTTF", ioex);
+            throw new FontException("Can't perform I/O operation!", ioex);
+        } catch (FontFormatException ffe) {
+            manager.tracer().trace("GLFont.fromDistanceFieldTTF", ffe);
+            throw new FontException("Invalid TTF file!", ffe);
+        }
+    }
+
+    @Override
+    public IGLFont fromDynamicFont(FontboxManager manager, Font font) throws FontException {
+        return GLDynamicFont.fromFont(manager, font);
+    }
+
+    @Override
+    public IGLFont fromComposite(FontboxManager manager, String name, IGLFont... fonts) {
+        return GLCompositeFont.fromFonts(manager, name, fonts);
+    }
+
+    private static byte[] readResource(ResourceLocation location) throws IOException {
+        try (IResource resource = Minecraft.getMinecraft().getResourceManager().getResource(location)) {
+            InputStream stream = resource.getInputStream();
+            if (stream == null)
+                throw new IOException("Could not open TTF file.");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = stream.read(buf)) != -1)
+                out.write(buf, 0, len);
+            return out.toByteArray();
+        }
+    }
+
     @Override
     public IGLFont fromSpriteFont(FontboxManager manager, String name, ResourceLocation image, ResourceLocation xml) throws FontException {
+        checkSpriteFont(manager, name, image, xml);
+        return upload(manager, "GLFont.fromSpriteFont", () -> prepareSpriteFont(manager, name, image, xml));
+    }
+
+    @Override
+    public CompletableFuture<IGLFont> loadFontAsync(FontboxManager manager, String name, ResourceLocation image, ResourceLocation xml) {
+        checkSpriteFont(manager, name, image, xml);
+        return loadAsync(manager, "GLFont.fromSpriteFont", () -> prepareSpriteFont(manager, name, image, xml));
+    }
+
+    private static void checkSpriteFont(FontboxManager manager, String name, ResourceLocation image, ResourceLocation xml) {
         if (manager == null || manager.tracer() == null)
             throw new IllegalArgumentException("trace may not be null");
         if (name == null)
@@ -50,19 +291,55 @@ public class GLFontBuilder implements IGLFontBuilder {
             throw new IllegalArgumentException("image may not be null");
         if (xml == null)
             throw new IllegalArgumentException("xml may not be null");
-        try {
-            IResource imageResource = Minecraft.getMinecraft().getResourceManager().getResource(image);
+    }
+
+    @Override
+    public IGLFont fromSpriteFontMetrics(FontboxManager manager, String name, ResourceLocation image, ResourceLocation xml) throws FontException {
+        checkSpriteFont(manager, name, image, xml);
+        try (IResource imageResource = Minecraft.getMinecraft().getResourceManager().getResource(image);
+             ImageInputStream stream = ImageIO.createImageInputStream(imageResource.getInputStream())) {
+            Iterator<ImageReader> readers = (stream != null) ? ImageIO.getImageReaders(stream) : null;
+            if (readers == null || !readers.hasNext())
+                throw new IOException("Could not open image file.");
+            ImageReader reader = readers.next();
+            int width, height;
+            try {
+                reader.setInput(stream, true, true);
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+            GLFontMetrics metric = GLFontMetrics.fromResource(manager.tracer(), xml, width, height);
+            metric.setKerningEnabled(false);
+            manager.tracer().trace("GLFont.fromSpriteFontMetrics", "fromMetric", metric);
+            return GLMetricsFont.fromMetrics(manager, name, metric, () -> prepareSpriteFont(manager, name, image, xml));
+        } catch (IOException ioex) {
+            manager.tracer().trace("GLFont.fromSpriteFontMetrics", ioex);
+            throw new FontException("Can't perform I/O operation!", ioex);
+        }
+    }
+
+    /**
+     * Read a sprite font image and its metrics into an atlas raster. Does not
+     * touch OpenGL.
+     */
+    private GLFontAtlasCache.Entry prepareSpriteFont(FontboxManager manager, String name, ResourceLocation image, ResourceLocation xml) throws FontException {
+        try (IResource imageResource = Minecraft.getMinecraft().getResourceManager().getResource(image)) {
             InputStream stream = imageResource.getInputStream();
             if (stream == null)
                 throw new IOException("Could not open image file.");
             BufferedImage buffer = ImageIO.read(stream);
+            int width = buffer.getWidth(), height = buffer.getHeight();
 
-            GLFontMetrics metric = GLFontMetrics.fromResource(manager.tracer(), xml, buffer.getWidth(), buffer.getHeight());
+            GLFontMetrics metric = GLFontMetrics.fromResource(manager.tracer(), xml, width, height);
+            metric.setKerningEnabled(false);
             manager.tracer().trace("GLFont.fromSpriteFont", "fromMetric", metric);
-            IGLFont f0 = GLFont.fromBuffer(manager, name, buffer, buffer.getWidth(), buffer.getHeight(), metric);
-            manager.tracer().trace("GLFont.fromSpriteFont", f0);
-            return f0;
-
+            if (GLFont.isCoverage(buffer, width, height))
+                return new GLFontAtlasCache.Entry(name, GL11.GL_ALPHA, width, height,
+                    GLFont.toAlphaRaster(buffer, width, height), metric);
+            return new GLFontAtlasCache.Entry(name, GL11.GL_RGBA, width, height,
+                GLFont.toRaster(buffer, width, height), metric);
         } catch (IOException ioex) {
             manager.tracer().trace("GLFont.fromSpriteFont", ioex);
             throw new FontException("Can't perform I/O operation!", ioex);
@@ -71,31 +348,86 @@ public class GLFontBuilder implements IGLFontBuilder {
 
     @Override
     public IGLFont fromFont(FontboxManager manager, Font font) throws FontException {
+        checkFont(manager, font);
+        return upload(manager, "GLFont.fromFont", () -> bake(manager, font));
+    }
+
+    @Override
+    public CompletableFuture<IGLFont> loadFontAsync(FontboxManager manager, Font font) {
+        checkFont(manager, font);
+        return loadAsync(manager, "GLFont.fromFont", () -> bake(manager, font));
+    }
+
+    private static void checkFont(FontboxManager manager, Font font) {
         if (manager == null || manager.tracer() == null)
             throw new IllegalArgumentException("trace may not be null");
         if (font == null)
             throw new IllegalArgumentException("font may not be null");
-        BufferedImage buffer = new BufferedImage(RASTER_DIM, RASTER_DIM, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D graphics = (Graphics2D) buffer.getGraphics();
-        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        int off = 0;
-        int charsPerRow = 12;
-        for (char k = IGLFont.MIN_CH; k <= IGLFont.MAX_CH; k++, off++) {
-            TextLayout layout = new TextLayout(String.valueOf(k), font, graphics.getFontRenderContext());
-            Rectangle2D rect = layout.getBounds();
-            int x = (off % charsPerRow) * (RASTER_DIM / charsPerRow);
-            int y = (off / charsPerRow) * (RASTER_DIM / charsPerRow);
-            float cy = (float) rect.getHeight();
-            graphics.setColor(Color.WHITE);
-            manager.tracer().trace("GLFont.fromFont", "placeGlyph", k, x, y - cy);
-            layout.draw(graphics, x, y - cy);
-        }
+    }
+
+    /**
+     * Prepare an atlas on the font loading pool, then queue its upload onto
+     * the render thread.
+     */
+    private static CompletableFuture<IGLFont> loadAsync(FontboxManager manager, String what, GLFont.Source source) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return source.load();
+            } catch (FontException e) {
+                throw new CompletionException(e);
+            }
+        }, FontboxManager.loadExecutor()).thenCompose(entry -> FontboxManager.queueUpload(() -> upload(manager, what, entry, source)));
+    }
 
-        GLFontMetrics metric = GLFontMetrics.fromFontMetrics(manager.tracer(), font, graphics.getFontRenderContext(), RASTER_DIM,
-            RASTER_DIM, charsPerRow, IGLFont.MIN_CH, IGLFont.MAX_CH);
-        manager.tracer().trace("GLFont.fromFont", "fromMetric", metric);
-        IGLFont f0 = GLFont.fromBuffer(manager, font.getFontName(), buffer, RASTER_DIM, RASTER_DIM, metric);
-        manager.tracer().trace("GLFont.fromFont", f0);
+    /**
+     * Prepare and upload an atlas and register the font. Must be called on
+     * the render thread.
+     */
+    private static IGLFont upload(FontboxManager manager, String what, GLFont.Source source) throws FontException {
+        return upload(manager, what, source.load(), source);
+    }
+
+    /**
+     * Upload a prepared atlas and register the font. The source is kept so
+     * the font's texture can be evicted and restored. Must be called on the
+     * render thread.
+     */
+    private static IGLFont upload(FontboxManager manager, String what, GLFontAtlasCache.Entry entry, GLFont.Source source) throws FontException {
+        GLFont f0 = (GLFont) GLFont.fromRaster(manager, entry.name, entry.format, entry.raster, entry.width, entry.height, entry.metric);
+        f0.setSource(source);
+        manager.tracer().trace(what, f0);
         return f0;
     }
+
+    /**
+     * Rasterize and measure a Java Font object into a single-channel atlas
+     * raster and glyph metrics, without uploading anything.
+     *
+     * @param manager The manager used
+     * @param font    The font object
+     * @return The baked atlas
+     * @throws FontException Any exception which occurs when brewing the buffer
+     */
+    private GLFontAtlasCache.Entry bake(FontboxManager manager, Font font) throws FontException {
+        return bake(manager, font, null);
+    }
+
+    /**
+     * Rasterize and measure a subset of the characters of a Java Font object
+     * into a single-channel atlas raster and glyph metrics, without uploading
+     * anything.
+     *
+     * @param manager The manager used
+     * @param font    The font object
+     * @param subset  The code points to bake, or null to bake the default range
+     * @return The baked atlas
+     * @throws FontException Any exception which occurs when brewing the buffer
+     */
+    private GLFontAtlasCache.Entry bake(FontboxManager manager, Font font, BitSet subset) throws FontException {
+        GLGlyphBaker.Result result = new GLGlyphBaker(manager.tracer(), font, 0, subset).bake(true);
+        manager.tracer().trace("GLFont.fromFont", "fromMetric", result.metric);
+        int width = result.image.getWidth(), height = result.image.getHeight();
+        return new GLFontAtlasCache.Entry(font.getFontName(), GL11.GL_ALPHA, width, height,
+            GLFont.toAlphaRaster(result.image, width, height), result.metric);
+    }
 }
@@ -4,25 +4,23 @@ import net.afterlifelochie.fontbox.api.exception.FontException;
 import net.afterlifelochie.fontbox.api.font.IGLFontMetrics;
 import net.afterlifelochie.fontbox.api.font.IGLGlyphMetric;
 import net.afterlifelochie.fontbox.api.tracer.ITracer;
+import net.afterlifelochie.util.IntIntMap;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.resources.IResource;
 import net.minecraft.util.ResourceLocation;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.awt.*;
 import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
 import java.awt.geom.Rectangle2D;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.HashMap;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -33,6 +31,18 @@ import java.util.Map;
  * @author AfterLifeLochie
  */
 public class GLFontMetrics implements IGLFontMetrics {
+    /**
+     * The file suffix of binary font metric files
+     */
+    public static final String BINARY_SUFFIX = ".fbm";
+
+    private static final int MAGIC = 0x4642464D; // FBFM
+    private static final int VERSION = 2;
+    /**
+     * The most binary records read with one call
+     */
+    private static final int BLOCK_RECORDS = 4096;
+
     /**
      * Derive a font metric from a font file, a font render context and the
      * layout properties specified.
@@ -62,30 +72,44 @@ public class GLFontMetrics implements IGLFontMetrics {
         GLFontMetrics metric = new GLFontMetrics(fontImageWidth, fontImageHeight);
         for (char k = minChar; k <= maxChar; k++, off++) {
             TextLayout layout = new TextLayout(String.valueOf(k), font, ctx);
-            Rectangle2D rect = layout.getBounds();
             int x = (off % charsPerRow) * (fontImageWidth / charsPerRow);
             int y = (off / charsPerRow) * (fontImageWidth / charsPerRow);
-
-            float cy = (float) rect.getHeight();
-            Rectangle rect0 = layout.getPixelBounds(null, 100, 100);
-            float cx = -(rect0.x - 100);
-
-            int u = (int) Math.ceil(rect.getWidth() + cx);
-            int v = (int) Math.ceil(layout.getAscent() + layout.getDescent());
-            trace.trace("GLFontMetrics.fromFontMetrics", "placeGlyph", k, u, v, x - cx, y - cy);
-            metric.glyphs.put((int) k,
-                new GLGlyphMetric(u, v, (int) layout.getAscent(), (int) (x - cx), (int) (y - cy)));
+            int[] glyph = measureGlyph(layout, x, y);
+            trace.trace("GLFontMetrics.fromFontMetrics", "placeGlyph", k, glyph[0], glyph[1], glyph[3], glyph[4]);
+            metric.glyphs.put(k, glyph[0], glyph[1], glyph[2], glyph[3], glyph[4]);
         }
         trace.trace("GLFontMetrics.fromFontMetrics", metric);
         return metric;
     }
 
     /**
-     * Derive a font metric from an XML document path and the layout properties
-     * specified.
+     * Measure one laid-out glyph which is drawn with its origin at the
+     * specified atlas location.
+     *
+     * @param layout The glyph layout
+     * @param x      The x-coordinate the glyph is placed at on the atlas
+     * @param y      The y-coordinate the glyph is placed at on the atlas
+     * @return The glyph width, height, ascent, u and v, in that order
+     */
+    static int[] measureGlyph(TextLayout layout, int x, int y) {
+        Rectangle2D rect = layout.getBounds();
+        float cy = (float) rect.getHeight();
+        Rectangle rect0 = layout.getPixelBounds(null, 100, 100);
+        float cx = -(rect0.x - 100);
+
+        int u = (int) Math.ceil(rect.getWidth() + cx);
+        int v = (int) Math.ceil(layout.getAscent() + layout.getDescent());
+        return new int[]{u, v, (int) layout.getAscent(), (int) (x - cx), (int) (y - cy)};
+    }
+
+    /**
+     * Derive a font metric from a metrics document path and the layout
+     * properties specified. Paths ending in {@link GLFontMetrics#BINARY_SUFFIX}
+     * are read as binary metrics; any other path is read as an XML metrics
+     * document.
      *
      * @param trace           The debugging tracer object
-     * @param fontMetricName  The path to the XML metrics document
+     * @param fontMetricName  The path to the metrics document
      * @param fontImageWidth  The font image width
      * @param fontImageHeight The font image height
      * @return A GLFontMetrics object which appropriates the location of all
@@ -99,33 +123,58 @@ public class GLFontMetrics implements IGLFontMetrics {
             throw new IllegalArgumentException("trace may not be null");
         if (fontMetricName == null)
             throw new IllegalArgumentException("fontMetricName may not be null");
-        try {
-            IResource metricResource = Minecraft.getMinecraft().getResourceManager().getResource(fontMetricName);
+        try (IResource metricResource = Minecraft.getMinecraft().getResourceManager().getResource(fontMetricName)) {
             InputStream stream = metricResource.getInputStream();
             if (stream == null)
                 throw new IOException("Could not open font metric file.");
+            if (fontMetricName.getResourcePath().endsWith(BINARY_SUFFIX))
+                return fromFBM(trace, stream, fontImageWidth, fontImageHeight);
+            return fromXML(trace, stream, fontImageWidth, fontImageHeight);
+        } catch (IOException e) {
+            throw new FontException("Cannot setup font.", e);
+        }
+    }
 
-            GLFontMetrics metric = new GLFontMetrics(fontImageWidth, fontImageHeight);
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(stream);
-            Element metrics = doc.getDocumentElement();
-
-            NodeList list_character = metrics.getElementsByTagName("character");
-            for (int i = 0; i < list_character.getLength(); i++) {
-                Element character = (Element) list_character.item(i);
-                int c = Integer.parseInt(character.getAttributes().getNamedItem("key").getNodeValue());
-                if (0 > c || c > 255)
+    /**
+     * Derive a font metric from an XML metrics document. The document is read
+     * as a stream and glyphs are placed in the glyph table as they are read,
+     * so no document tree is built. The stream is not closed.
+     *
+     * @param trace           The debugging tracer object
+     * @param stream          The XML metrics document
+     * @param fontImageWidth  The font image width
+     * @param fontImageHeight The font image height
+     * @return A GLFontMetrics object which appropriates the location of all
+     * fonts on the buffer, based on the parameters provided.
+     * @throws FontException Any exception which is raised by producing invalid metrics
+     *                       information.
+     */
+    public static GLFontMetrics fromXML(ITracer trace, InputStream stream, int fontImageWidth, int fontImageHeight)
+        throws FontException {
+        if (trace == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (stream == null)
+            throw new IllegalArgumentException("stream may not be null");
+        GLFontMetrics metric = new GLFontMetrics(fontImageWidth, fontImageHeight);
+        XMLStreamReader reader = null;
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            reader = factory.createXMLStreamReader(stream);
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT || !"character".equals(reader.getLocalName()))
+                    continue;
+                String key = reader.getAttributeValue(null, "key");
+                if (key == null)
+                    throw new FontException("Character without key");
+                int c = Integer.parseInt(key.trim());
+                if (0 > c || c > Character.MAX_VALUE)
                     throw new FontException(String.format("Unsupported character code %s", c));
                 int w = -1, h = -1, u = -1, v = -1;
-                NodeList character_properties = character.getChildNodes();
-                for (int k = 0; k < character_properties.getLength(); k++) {
-                    Node property = character_properties.item(k);
-                    if (!(property instanceof Element))
-                        continue;
-                    Element elem = (Element) property;
-                    String name = elem.getNodeName().toLowerCase();
-                    int val = Integer.parseInt(elem.getFirstChild().getNodeValue());
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName().toLowerCase();
+                    int val = Integer.parseInt(reader.getElementText().trim());
                     switch (name) {
                         case "width":
                             w = val;
@@ -145,32 +194,324 @@ public class GLFontMetrics implements IGLFontMetrics {
                 }
                 if (w == -1 || h == -1 || u == -1 || v == -1)
                     throw new FontException(String.format("Invalid metric properties set for key %s", c));
-                trace.trace("GLFontMetrics.fromResource", "placeGlyph", (char) c, w, h, u, v);
-                metric.glyphs.put(c, new GLGlyphMetric(w, h, 0, u, v));
+                trace.trace("GLFontMetrics.fromXML", "placeGlyph", (char) c, w, h, u, v);
+                metric.glyphs.put(c, w, h, 0, u, v);
             }
-            trace.trace("GLFontMetrics.fromResource", metric);
+            trace.trace("GLFontMetrics.fromXML", metric);
+            return metric;
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new FontException("Cannot read font metric data.", e);
+        } finally {
+            if (reader != null)
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    trace.warn("GLFontMetrics.fromXML", "Cannot close reader", e);
+                }
+        }
+    }
+
+    /**
+     * Derive a font metric from a binary metrics file, as produced by
+     * {@link GLFontMetrics#writeFBM(DataOutput)}. The stream is not closed.
+     *
+     * @param trace           The debugging tracer object
+     * @param stream          The binary metrics file
+     * @param fontImageWidth  The font image width, or zero to use the size
+     *                        stored in the file
+     * @param fontImageHeight The font image height, or zero to use the size
+     *                        stored in the file
+     * @return A GLFontMetrics object which appropriates the location of all
+     * fonts on the buffer, based on the parameters provided.
+     * @throws FontException Any exception which is raised by producing invalid metrics
+     *                       information.
+     */
+    public static GLFontMetrics fromFBM(ITracer trace, InputStream stream, int fontImageWidth, int fontImageHeight)
+        throws FontException {
+        if (trace == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (stream == null)
+            throw new IllegalArgumentException("stream may not be null");
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+            if (in.readInt() != MAGIC)
+                throw new FontException("Not a binary font metric file");
+            int version = in.readInt();
+            if (version != 1 && version != VERSION)
+                throw new FontException(String.format("Unsupported binary font metric version %s", version));
+            GLFontMetrics metric = readBinary(trace, in, version > 1);
+            if (fontImageWidth > 0 && fontImageHeight > 0)
+                metric.setFontImageSize(fontImageWidth, fontImageHeight);
             return metric;
         } catch (IOException e) {
-            throw new FontException("Cannot setup font.", e);
-        } catch (ParserConfigurationException | SAXException e) {
             throw new FontException("Cannot read font metric data.", e);
         }
     }
 
+    /**
+     * Read a font metric from the binary form produced by
+     * {@link GLFontMetrics#writeBinary(DataOutput)}.
+     *
+     * @param trace The debugging tracer object
+     * @param in    The stream to read from
+     * @return The GLFontMetrics object read from the stream
+     * @throws IOException Any exception which occurs when reading from the stream
+     */
+    public static GLFontMetrics fromBinary(ITracer trace, DataInput in) throws IOException {
+        return readBinary(trace, in, true);
+    }
+
+    private static GLFontMetrics readBinary(ITracer trace, DataInput in, boolean kerned) throws IOException {
+        if (trace == null)
+            throw new IllegalArgumentException("trace may not be null");
+        GLFontMetrics metric = new GLFontMetrics(in.readInt(), in.readInt());
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("Invalid glyph count " + count);
+        readRecords(in, count, 6, record -> metric.glyphs.put(record.get(), record.get(), record.get(),
+            record.get(), record.get(), record.get()));
+        if (kerned) {
+            int pairs = in.readInt();
+            if (pairs < 0)
+                throw new IOException("Invalid kerning pair count " + pairs);
+            readRecords(in, pairs, 2, record -> metric.kerning.put(record.get(), record.get()));
+        }
+        trace.trace("GLFontMetrics.fromBinary", metric);
+        return metric;
+    }
+
+    /**
+     * A consumer of one fixed-size binary record
+     */
+    private interface RecordReader {
+        void read(IntBuffer record);
+    }
+
+    /**
+     * Read fixed-size records of big-endian ints. Records are read in blocks
+     * of up to {@link GLFontMetrics#BLOCK_RECORDS} with one
+     * {@link DataInput#readFully(byte[], int, int)} each, rather than one
+     * call per int.
+     *
+     * @param in     The stream to read from
+     * @param count  The number of records
+     * @param ints   The number of ints in each record
+     * @param reader The consumer of each record
+     * @throws IOException Any exception which occurs when reading from the stream
+     */
+    private static void readRecords(DataInput in, int count, int ints, RecordReader reader) throws IOException {
+        int size = ints * 4;
+        byte[] block = new byte[Math.min(count, BLOCK_RECORDS) * size];
+        IntBuffer record = ByteBuffer.wrap(block).asIntBuffer();
+        for (int done = 0; done < count; ) {
+            int n = Math.min(count - done, BLOCK_RECORDS);
+            in.readFully(block, 0, n * size);
+            record.clear();
+            for (int i = 0; i < n; i++)
+                reader.read(record);
+            done += n;
+        }
+    }
 
-    private final Map<Integer, IGLGlyphMetric> glyphs = new HashMap<>();
-    private final float fontImageWidth, fontImageHeight;
+    /**
+     * Write the font metric in a compact binary form. The metric can be read
+     * back with {@link GLFontMetrics#fromBinary(ITracer, DataInput)}.
+     *
+     * @param out The stream to write to
+     * @throws IOException Any exception which occurs when writing to the stream
+     */
+    public void writeBinary(DataOutput out) throws IOException {
+        out.writeInt((int) fontImageWidth);
+        out.writeInt((int) fontImageHeight);
+        int[] codePoints = glyphs.codePoints();
+        out.writeInt(codePoints.length);
+        for (int cp : codePoints) {
+            int row = glyphs.indexOf(cp);
+            out.writeInt(cp);
+            out.writeInt(glyphs.width(row));
+            out.writeInt(glyphs.height(row));
+            out.writeInt(glyphs.ascent(row));
+            out.writeInt(glyphs.u(row));
+            out.writeInt(glyphs.v(row));
+        }
+        int[] pairs = kerning.keys();
+        Arrays.sort(pairs);
+        out.writeInt(pairs.length);
+        for (int pair : pairs) {
+            out.writeInt(pair);
+            out.writeInt(kerning.get(pair, 0));
+        }
+    }
 
-    private GLFontMetrics(int fontImageWidth, int fontImageHeight) {
+    /**
+     * Write the font metric as a binary metrics file, which can be read back
+     * with {@link GLFontMetrics#fromFBM(ITracer, InputStream, int, int)}.
+     * Every glyph is a fixed-size record, so the file can be read in bulk.
+     *
+     * @param out The stream to write to
+     * @throws IOException Any exception which occurs when writing to the stream
+     */
+    public void writeFBM(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeBinary(out);
+    }
+
+    private final GLGlyphTable glyphs = new GLGlyphTable();
+    private final IntIntMap kerning = new IntIntMap();
+    private boolean kerningEnabled = true;
+    private float fontImageWidth, fontImageHeight;
+
+    GLFontMetrics(int fontImageWidth, int fontImageHeight) {
+        this.fontImageWidth = fontImageWidth;
+        this.fontImageHeight = fontImageHeight;
+    }
+
+    /**
+     * Change the size of the font image the glyph coordinates refer to.
+     *
+     * @param fontImageWidth  The new font image width
+     * @param fontImageHeight The new font image height
+     */
+    void setFontImageSize(int fontImageWidth, int fontImageHeight) {
         this.fontImageWidth = fontImageWidth;
         this.fontImageHeight = fontImageHeight;
     }
 
+    /**
+     * Get the row of a character in the glyph table.
+     *
+     * @param c The character
+     * @return The row of the character, or -1 if there is no glyph for it
+     */
     @Override
-    public Map<Integer, IGLGlyphMetric> getGlyphs() {
+    public int rowOf(char c) {
+        return glyphs.indexOf(c);
+    }
+
+    /**
+     * Set the kerning adjustment of a character pair, replacing any existing
+     * adjustment.
+     *
+     * @param left   The first character
+     * @param right  The character which follows it
+     * @param adjust The adjustment to the advance between them
+     */
+    public void putKerning(char left, char right, int adjust) {
+        kerning.put((left << 16) | right, adjust);
+    }
+
+    /**
+     * Get the number of kerned character pairs.
+     *
+     * @return The number of kerned pairs
+     */
+    public int kerningPairs() {
+        return kerning.size();
+    }
+
+    /**
+     * Enable or disable kerning. Sprite fonts are laid out on a fixed grid
+     * and have kerning disabled.
+     *
+     * @param enabled If kerning adjustments are applied
+     */
+    public void setKerningEnabled(boolean enabled) {
+        kerningEnabled = enabled;
+    }
+
+    /**
+     * Check if kerning is enabled.
+     *
+     * @return If kerning adjustments are applied
+     */
+    @Override
+    public boolean isKerningEnabled() {
+        return kerningEnabled;
+    }
+
+    /**
+     * Get the glyph table backing this metric.
+     *
+     * @return The glyph table
+     */
+    public GLGlyphTable getGlyphTable() {
         return glyphs;
     }
 
+    @Override
+    @Deprecated
+    public Map<Integer, IGLGlyphMetric> getGlyphs() {
+        return glyphs.toMap();
+    }
+
+    @Override
+    public boolean hasGlyph(char c) {
+        return rowOf(c) != -1;
+    }
+
+    @Override
+    public int widthOf(char c) {
+        int row = rowOf(c);
+        return (row != -1) ? glyphs.width(row) : 0;
+    }
+
+    @Override
+    public int heightOf(char c) {
+        int row = rowOf(c);
+        return (row != -1) ? glyphs.height(row) : 0;
+    }
+
+    @Override
+    public int ascentOf(char c) {
+        int row = rowOf(c);
+        return (row != -1) ? glyphs.ascent(row) : 0;
+    }
+
+    @Override
+    public int uOf(char c) {
+        int row = rowOf(c);
+        return (row != -1) ? glyphs.u(row) : 0;
+    }
+
+    @Override
+    public int vOf(char c) {
+        int row = rowOf(c);
+        return (row != -1) ? glyphs.v(row) : 0;
+    }
+
+    @Override
+    public int widthAt(int row) {
+        return glyphs.width(row);
+    }
+
+    @Override
+    public int heightAt(int row) {
+        return glyphs.height(row);
+    }
+
+    @Override
+    public int ascentAt(int row) {
+        return glyphs.ascent(row);
+    }
+
+    @Override
+    public int uAt(int row) {
+        return glyphs.u(row);
+    }
+
+    @Override
+    public int vAt(int row) {
+        return glyphs.v(row);
+    }
+
+    @Override
+    public int kerningOf(char left, char right) {
+        if (!kerningEnabled || kerning.size() == 0)
+            return 0;
+        return kerning.get((left << 16) | right, 0);
+    }
+
     @Override
     public float getFontImageWidth() {
         return fontImageWidth;
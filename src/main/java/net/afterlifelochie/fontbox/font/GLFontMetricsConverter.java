@@ -0,0 +1,51 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.afterlifelochie.fontbox.api.exception.FontException;
+import net.afterlifelochie.fontbox.api.tracer.ITracer;
+import net.afterlifelochie.fontbox.api.tracer.VoidTracer;
+
+import java.io.*;
+
+/**
+ * Converts XML sprite font metrics documents into binary .fbm metrics files.
+ * Can be run from the command line:
+ * <code>GLFontMetricsConverter in.metrics.xml out.fbm [width height]</code>
+ *
+ * @author AfterLifeLochie
+ */
+public class GLFontMetricsConverter {
+    /**
+     * Convert an XML metrics document into a binary metrics file. Neither
+     * stream is closed.
+     *
+     * @param trace  The debugging tracer object
+     * @param xml    The XML metrics document
+     * @param fbm    The stream to write the binary metrics file to
+     * @param width  The font image width to record, or zero if unknown
+     * @param height The font image height to record, or zero if unknown
+     * @return The number of glyphs converted
+     * @throws FontException Any exception which occurs when reading the XML document
+     * @throws IOException   Any exception which occurs when writing the binary file
+     */
+    public static int convert(ITracer trace, InputStream xml, OutputStream fbm, int width, int height)
+        throws FontException, IOException {
+        GLFontMetrics metric = GLFontMetrics.fromXML(trace, xml, width, height);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fbm));
+        metric.writeFBM(out);
+        out.flush();
+        return metric.getGlyphTable().size();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 && args.length != 4) {
+            System.err.println("usage: GLFontMetricsConverter <in.metrics.xml> <out.fbm> [width height]");
+            System.exit(1);
+        }
+        int width = (args.length == 4) ? Integer.parseInt(args[2]) : 0;
+        int height = (args.length == 4) ? Integer.parseInt(args[3]) : 0;
+        try (InputStream in = new FileInputStream(args[0]); OutputStream out = new FileOutputStream(args[1])) {
+            int count = convert(new VoidTracer(), in, out, width, height);
+            System.out.println(String.format("Converted %s glyphs to %s", count, args[1]));
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.afterlifelochie.fontbox.api.exception.FontException;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+import net.afterlifelochie.fontbox.api.tracer.ITracer;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Glyph atlas baker. Every glyph of a font is measured by its real pixel
+ * bounds, the glyphs are skyline-packed onto the smallest power-of-two atlas
+ * which holds them all, and each glyph is then drawn into its own tile and
+ * copied onto the atlas. Measuring and drawing are done in batches on the
+ * fork-join pool; since glyph regions never overlap, the output does not
+ * depend on the order in which batches complete. When a distance field spread
+ * is set, each tile is drawn with a margin of the spread on every side and
+ * transformed into a signed distance field before it is copied, so the
+ * distance transform runs in the same parallel batches. Kerning pair
+ * adjustments are read from the font's glyph layout, also in batches. The
+ * glyphs can also be measured and packed without drawing anything, for fonts
+ * which only lay text out. By default the {@link IGLFont#MIN_CH} to
+ * {@link IGLFont#MAX_CH} range is baked; a baker can instead be given the
+ * subset of characters a set of documents actually uses.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLGlyphBaker {
+    /**
+     * The gap left between glyphs on the atlas
+     */
+    public static final int PADDING = 1;
+    /**
+     * The smallest atlas edge which is tried
+     */
+    public static final int MIN_DIM = 16;
+    /**
+     * The largest atlas edge which is tried
+     */
+    public static final int MAX_DIM = 4096;
+    /**
+     * The number of glyphs in each batch
+     */
+    private static final int GLYPHS_PER_BATCH = 32;
+
+    /**
+     * The result of a bake
+     */
+    public static class Result {
+        public final BufferedImage image;
+        public final GLFontMetrics metric;
+
+        public Result(BufferedImage image, GLFontMetrics metric) {
+            this.image = image;
+            this.metric = metric;
+        }
+    }
+
+    private final ITracer trace;
+    private final Font font;
+    private final int spread;
+    private final char[] chars;
+    private final int count;
+    private final TextLayout[] layouts;
+    private final float[] originX, advance;
+    private final int[][] kerning;
+    private final int[] width, height, ascent;
+    private final int[] x, y;
+    private int atlasWidth, atlasHeight;
+
+    /**
+     * Create a new baker for a font.
+     *
+     * @param trace The debugging tracer object
+     * @param font  The font to bake
+     */
+    public GLGlyphBaker(ITracer trace, Font font) {
+        this(trace, font, 0);
+    }
+
+    /**
+     * Create a new baker for a font.
+     *
+     * @param trace  The debugging tracer object
+     * @param font   The font to bake
+     * @param spread The distance field spread in pixels, or zero to bake
+     *               plain coverage
+     */
+    public GLGlyphBaker(ITracer trace, Font font, int spread) {
+        this(trace, font, spread, null);
+    }
+
+    /**
+     * Create a new baker for a subset of the characters of a font. Characters
+     * of the subset outside the {@link IGLFont#MIN_CH} to {@link IGLFont#MAX_CH}
+     * range are only baked if the font can display them. The '?' glyph is
+     * always baked, as layout substitutes it for glyphs the font does not have.
+     *
+     * @param trace  The debugging tracer object
+     * @param font   The font to bake
+     * @param spread The distance field spread in pixels, or zero to bake
+     *               plain coverage
+     * @param subset The code points to bake, or null to bake the
+     *               {@link IGLFont#MIN_CH} to {@link IGLFont#MAX_CH} range
+     */
+    public GLGlyphBaker(ITracer trace, Font font, int spread, BitSet subset) {
+        if (trace == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (font == null)
+            throw new IllegalArgumentException("font may not be null");
+        if (spread < 0)
+            throw new IllegalArgumentException("spread may not be negative");
+        this.trace = trace;
+        this.font = font;
+        this.spread = spread;
+        this.chars = charsOf(font, subset);
+        count = chars.length;
+        layouts = new TextLayout[count];
+        originX = new float[count];
+        advance = new float[count];
+        kerning = new int[count][];
+        width = new int[count];
+        height = new int[count];
+        ascent = new int[count];
+        x = new int[count];
+        y = new int[count];
+    }
+
+    /**
+     * The glyph layout draws in place of unsupported glyphs
+     */
+    private static final char SUBSTITUTE = '?';
+
+    private static char[] charsOf(Font font, BitSet subset) {
+        if (subset == null) {
+            char[] chars = new char[IGLFont.MAX_CH - IGLFont.MIN_CH + 1];
+            for (int off = 0; off < chars.length; off++)
+                chars[off] = (char) (IGLFont.MIN_CH + off);
+            return chars;
+        }
+        subset = (BitSet) subset.clone();
+        subset.set(SUBSTITUTE);
+        char[] chars = new char[subset.cardinality()];
+        int n = 0;
+        for (int cp = subset.nextSetBit(0); cp >= 0 && cp <= Character.MAX_VALUE; cp = subset.nextSetBit(cp + 1))
+            if ((cp >= IGLFont.MIN_CH && cp <= IGLFont.MAX_CH) || font.canDisplay((char) cp))
+                chars[n++] = (char) cp;
+        return Arrays.copyOf(chars, n);
+    }
+
+    /**
+     * Bake the font.
+     *
+     * @param parallel If the glyph batches should be processed on the common
+     *                 fork-join pool; if false, every batch is processed on
+     *                 the calling thread
+     * @return The atlas image and glyph metrics
+     * @throws FontException If the glyphs do not fit on the largest atlas
+     */
+    public Result bake(boolean parallel) throws FontException {
+        GLFontMetrics metric = measure(parallel);
+        BufferedImage atlas = new BufferedImage(atlasWidth, atlasHeight, BufferedImage.TYPE_INT_ARGB);
+        run(parallel, (first, last) -> new Draw(first, last, atlas));
+        return new Result(atlas, metric);
+    }
+
+    /**
+     * Measure and pack the font without drawing it. The metrics are the same
+     * as those of a bake, so the atlas can be baked later to match them.
+     *
+     * @param parallel If the glyph batches should be processed on the common
+     *                 fork-join pool; if false, every batch is processed on
+     *                 the calling thread
+     * @return The glyph metrics
+     * @throws FontException If the glyphs do not fit on the largest atlas
+     */
+    public GLFontMetrics measure(boolean parallel) throws FontException {
+        run(parallel, Measure::new);
+        run(parallel, Kern::new);
+        int[] size = pack();
+        atlasWidth = size[0];
+        atlasHeight = size[1];
+        trace.trace("GLGlyphBaker.bake", "atlas", size[0], size[1]);
+
+        GLFontMetrics metric = new GLFontMetrics(size[0], size[1]);
+        for (int off = 0; off < count; off++)
+            metric.getGlyphTable().put(chars[off], width[off], height[off], ascent[off], x[off],
+                y[off] + ascent[off]);
+        for (int off = 0; off < count; off++)
+            for (int i = 0; kerning[off] != null && i < kerning[off].length; i += 2)
+                metric.putKerning(chars[off], chars[kerning[off][i]], kerning[off][i + 1]);
+        trace.trace("GLGlyphBaker.bake", "kerningPairs", metric.kerningPairs());
+        trace.trace("GLGlyphBaker.bake", "fromMetric", metric);
+        return metric;
+    }
+
+    private interface BatchFactory {
+        RecursiveAction create(int first, int last);
+    }
+
+    private void run(boolean parallel, BatchFactory factory) {
+        List<RecursiveAction> batches = new ArrayList<>();
+        for (int first = 0; first < count; first += GLYPHS_PER_BATCH)
+            batches.add(factory.create(first, Math.min(count, first + GLYPHS_PER_BATCH)));
+        if (parallel && ForkJoinPool.getCommonPoolParallelism() > 1)
+            ForkJoinTask.invokeAll(batches);
+        else
+            for (RecursiveAction batch : batches)
+                batch.invoke();
+    }
+
+    /**
+     * Pack every glyph onto the smallest atlas which holds them all. Atlas
+     * sizes are tried in order of area: each square size, then the size twice
+     * as wide.
+     *
+     * @return The atlas width and height
+     * @throws FontException If the glyphs do not fit on the largest atlas
+     */
+    private int[] pack() throws FontException {
+        Integer[] order = new Integer[count];
+        long area = 0;
+        int widest = 0, tallest = 0;
+        for (int off = 0; off < count; off++) {
+            order[off] = off;
+            area += (long) (width[off] + PADDING) * (height[off] + PADDING);
+            widest = Math.max(widest, width[off] + PADDING);
+            tallest = Math.max(tallest, height[off] + PADDING);
+        }
+        // Tallest first, then widest, then by code point so the layout is stable
+        Arrays.sort(order, (a, b) -> (height[a] != height[b]) ? height[b] - height[a]
+            : (width[a] != width[b]) ? width[b] - width[a] : a - b);
+
+        int[] out = new int[2];
+        for (int h = MIN_DIM; h <= MAX_DIM; h <<= 1) {
+            for (int w = h; w <= Math.min(h << 1, MAX_DIM); w <<= 1) {
+                if ((long) w * h < area || w < widest || h < tallest)
+                    continue;
+                GLSkylinePacker packer = new GLSkylinePacker(w, h);
+                boolean fits = true;
+                for (int i = 0; i < count && fits; i++) {
+                    int off = order[i];
+                    fits = packer.pack(width[off] + PADDING, height[off] + PADDING, out);
+                    x[off] = out[0];
+                    y[off] = out[1];
+                }
+                if (fits)
+                    return new int[]{w, h};
+            }
+        }
+        throw new FontException(String.format("Glyphs of %s do not fit on a %s x %s atlas", font.getFontName(),
+            MAX_DIM, MAX_DIM));
+    }
+
+    /**
+     * One batch of glyphs to lay out and measure
+     */
+    private class Measure extends RecursiveAction {
+        private final int first, last;
+
+        Measure(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            FontRenderContext ctx = new FontRenderContext(null, true, false);
+            for (int off = first; off < last; off++) {
+                TextLayout layout = new TextLayout(String.valueOf(chars[off]), font, ctx);
+                Rectangle2D rect = layout.getBounds();
+                Rectangle rect0 = layout.getPixelBounds(null, 0, 0);
+                float cx = -rect0.x;
+                layouts[off] = layout;
+                originX[off] = cx;
+                advance[off] = layout.getAdvance();
+                width[off] = (int) Math.ceil(rect.getWidth() + cx);
+                height[off] = (int) Math.ceil(layout.getAscent() + layout.getDescent());
+                ascent[off] = (int) layout.getAscent();
+            }
+        }
+    }
+
+    /**
+     * Check if a glyph takes part in kerning. Blank and control characters
+     * are skipped, since spaces are laid out separately.
+     */
+    private boolean kernable(int off) {
+        char c = chars[off];
+        return width[off] > 0 && !Character.isWhitespace(c) && !Character.isISOControl(c) && font.canDisplay(c);
+    }
+
+    /**
+     * One batch of left-hand glyphs to find kerning pairs for. The adjustment
+     * of a pair is the difference between the distance of the two glyphs in a
+     * kerned layout and the advance of the left glyph alone. Each left glyph is
+     * laid out once, interleaved with every right glyph; if the layout does
+     * not map characters to glyphs one to one, each pair is laid out alone.
+     */
+    private class Kern extends RecursiveAction {
+        private final int first, last;
+
+        Kern(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            Font kerned = font.deriveFont(Collections.singletonMap(TextAttribute.KERNING, TextAttribute.KERNING_ON));
+            FontRenderContext ctx = new FontRenderContext(null, true, false);
+            int[] rights = new int[count];
+            int n = 0;
+            for (int right = 0; right < count; right++)
+                if (kernable(right))
+                    rights[n++] = right;
+            char[] run = new char[n * 2];
+            int[] found = new int[n * 2];
+            for (int left = first; left < last; left++) {
+                if (!kernable(left))
+                    continue;
+                for (int i = 0; i < n; i++) {
+                    run[2 * i] = chars[left];
+                    run[2 * i + 1] = chars[rights[i]];
+                }
+                GlyphVector vector = kerned.layoutGlyphVector(ctx, run, 0, run.length, Font.LAYOUT_LEFT_TO_RIGHT);
+                boolean direct = vector.getNumGlyphs() == run.length;
+                int pairs = 0;
+                for (int i = 0; i < n; i++) {
+                    GlyphVector pair = direct ? vector
+                        : kerned.layoutGlyphVector(ctx, run, 2 * i, 2 * i + 2, Font.LAYOUT_LEFT_TO_RIGHT);
+                    int at = direct ? 2 * i : 0;
+                    double distance = pair.getGlyphPosition(at + 1).getX() - pair.getGlyphPosition(at).getX();
+                    int adjust = Math.round((float) distance - advance[left]);
+                    if (adjust != 0) {
+                        found[pairs++] = rights[i];
+                        found[pairs++] = adjust;
+                    }
+                }
+                if (pairs != 0)
+                    kerning[left] = Arrays.copyOf(found, pairs);
+            }
+        }
+    }
+
+    /**
+     * One batch of glyphs to draw onto the atlas. Each glyph is drawn into a
+     * tile of its own size, so nothing outside its atlas region is touched.
+     */
+    private class Draw extends RecursiveAction {
+        private final int first, last;
+        private final BufferedImage atlas;
+
+        Draw(int first, int last, BufferedImage atlas) {
+            this.first = first;
+            this.last = last;
+            this.atlas = atlas;
+        }
+
+        @Override
+        protected void compute() {
+            GLDistanceField field = null;
+            for (int off = first; off < last; off++) {
+                int w = width[off], h = height[off];
+                if (w <= 0 || h <= 0)
+                    continue;
+                int tw = w + 2 * spread, th = h + 2 * spread;
+                BufferedImage tile = new BufferedImage(tw, th, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D graphics = tile.createGraphics();
+                graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                graphics.setColor(Color.WHITE);
+                layouts[off].draw(graphics, originX[off] + spread, layouts[off].getAscent() + spread);
+                graphics.dispose();
+                if (spread == 0)
+                    atlas.getRaster().setDataElements(x[off], y[off], tile.getRaster());
+                else {
+                    if (field == null)
+                        field = new GLDistanceField(widest(), tallest());
+                    atlas.getRaster().setDataElements(x[off], y[off], w, h, distance(field, tile, tw, th, w, h));
+                }
+                trace.trace("GLGlyphBaker.bake", "placeGlyph", chars[off], x[off], y[off]);
+            }
+        }
+
+        /**
+         * Transform a tile into a distance field and cut the glyph region out
+         * of its margin.
+         */
+        private int[] distance(GLDistanceField field, BufferedImage tile, int tw, int th, int w, int h) {
+            int[] samples = tile.getAlphaRaster().getSamples(0, 0, tw, th, 0, (int[]) null);
+            byte[] coverage = new byte[tw * th], out = new byte[tw * th];
+            for (int i = 0; i < samples.length; i++)
+                coverage[i] = (byte) samples[i];
+            field.transform(coverage, tw, th, spread, out);
+            int[] pixels = new int[w * h];
+            for (int row = 0; row < h; row++)
+                for (int col = 0; col < w; col++)
+                    pixels[row * w + col] = ((out[(row + spread) * tw + col + spread] & 0xff) << 24) | 0xffffff;
+            return pixels;
+        }
+    }
+
+    private int widest() {
+        int widest = 0;
+        for (int w : width)
+            widest = Math.max(widest, w);
+        return widest + 2 * spread;
+    }
+
+    private int tallest() {
+        int tallest = 0;
+        for (int h : height)
+            tallest = Math.max(tallest, h);
+        return tallest + 2 * spread;
+    }
+}
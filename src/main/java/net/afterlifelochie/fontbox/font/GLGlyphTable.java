@@ -0,0 +1,157 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+import net.afterlifelochie.fontbox.api.font.IGLGlyphMetric;
+import net.afterlifelochie.util.IntIntMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Flat glyph metric store. Glyphs in the {@link IGLFont#MIN_CH} to
+ * {@link IGLFont#MAX_CH} range are stored in a dense region indexed directly by
+ * code point; all other code points are mapped to rows after the dense region
+ * through a primitive map. Each metric is kept in its own int[] so lookups
+ * never box or allocate.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLGlyphTable {
+    /**
+     * The number of rows in the dense region
+     */
+    public static final int DENSE = IGLFont.MAX_CH - IGLFont.MIN_CH + 1;
+
+    private int[] width, height, ascent, u, v;
+    private final boolean[] present = new boolean[DENSE];
+    private final IntIntMap sparse = new IntIntMap();
+    private int rows = DENSE;
+    private int count = 0;
+
+    public GLGlyphTable() {
+        width = new int[DENSE];
+        height = new int[DENSE];
+        ascent = new int[DENSE];
+        u = new int[DENSE];
+        v = new int[DENSE];
+    }
+
+    /**
+     * Get the row of a code point in the table.
+     *
+     * @param cp The code point
+     * @return The row of the code point, or -1 if the code point has no glyph
+     */
+    public int indexOf(int cp) {
+        int off = cp - IGLFont.MIN_CH;
+        if (off >= 0 && off < DENSE)
+            return present[off] ? off : -1;
+        return sparse.get(cp, -1);
+    }
+
+    /**
+     * Place a glyph in the table, replacing any existing glyph for the code
+     * point.
+     *
+     * @param cp The code point
+     * @param w  The glyph width
+     * @param h  The glyph height
+     * @param a  The glyph ascent
+     * @param gu The u origin-coordinate of the texture
+     * @param gv The v origin-coordinate of the texture
+     */
+    public void put(int cp, int w, int h, int a, int gu, int gv) {
+        int row = indexOf(cp);
+        if (row == -1) {
+            int off = cp - IGLFont.MIN_CH;
+            if (off >= 0 && off < DENSE) {
+                row = off;
+                present[off] = true;
+            } else {
+                if (rows == width.length)
+                    grow(rows + (rows >> 1));
+                row = rows++;
+                sparse.put(cp, row);
+            }
+            count++;
+        }
+        width[row] = w;
+        height[row] = h;
+        ascent[row] = a;
+        u[row] = gu;
+        v[row] = gv;
+    }
+
+    private void grow(int capacity) {
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        ascent = Arrays.copyOf(ascent, capacity);
+        u = Arrays.copyOf(u, capacity);
+        v = Arrays.copyOf(v, capacity);
+    }
+
+    public int width(int row) {
+        return width[row];
+    }
+
+    public int height(int row) {
+        return height[row];
+    }
+
+    public int ascent(int row) {
+        return ascent[row];
+    }
+
+    public int u(int row) {
+        return u[row];
+    }
+
+    public int v(int row) {
+        return v[row];
+    }
+
+    /**
+     * Get the number of glyphs in the table.
+     *
+     * @return The number of glyphs in the table
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get all the code points in the table, dense region first.
+     *
+     * @return The code points with a glyph in the table
+     */
+    public int[] codePoints() {
+        int[] result = new int[count];
+        int k = 0;
+        for (int off = 0; off < DENSE; off++)
+            if (present[off])
+                result[k++] = IGLFont.MIN_CH + off;
+        for (int cp : sparse.keys())
+            result[k++] = cp;
+        return result;
+    }
+
+    /**
+     * Build a boxed snapshot of the table. This allocates a metric object for
+     * every glyph and should not be used on any hot path.
+     *
+     * @return A read-only map of code points to glyph metrics
+     */
+    public Map<Integer, IGLGlyphMetric> toMap() {
+        Map<Integer, IGLGlyphMetric> map = new HashMap<>();
+        for (int off = 0; off < DENSE; off++)
+            if (present[off])
+                map.put(IGLFont.MIN_CH + off, new GLGlyphMetric(width[off], height[off], ascent[off], u[off], v[off]));
+        for (int cp : sparse.keys()) {
+            int row = sparse.get(cp, -1);
+            map.put(cp, new GLGlyphMetric(width[row], height[row], ascent[row], u[row], v[row]));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+}
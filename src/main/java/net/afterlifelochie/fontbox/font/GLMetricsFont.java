@@ -0,0 +1,186 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.afterlifelochie.fontbox.api.FontboxManager;
+import net.afterlifelochie.fontbox.api.data.IBookProperties;
+import net.afterlifelochie.fontbox.api.exception.FontException;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+
+import java.awt.*;
+
+/**
+ * A font which only holds glyph metrics. Nothing is uploaded and no OpenGL
+ * call is made until the font is upgraded, so text can be laid out and
+ * paginated on any thread, or in a plain JVM with no GL context at all. A
+ * font created with an atlas source is upgraded by {@link GLMetricsFont#upload()}
+ * or the first time its texture is requested; it stays registered under its
+ * own handle, so layouts made before the upgrade draw with the uploaded
+ * texture.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLMetricsFont implements IGLFont {
+
+    /**
+     * Create a metrics-only font from a Java Font object and register it. The
+     * glyphs are measured and packed exactly as a bake would pack them, but
+     * not drawn.
+     *
+     * @param manager The used manager
+     * @param font    The font object
+     * @param source  The source of the font's atlas, or null if the font is
+     *                never drawn
+     * @return The font result
+     * @throws FontException If the glyphs do not fit on the largest atlas
+     */
+    public static IGLFont fromFont(FontboxManager manager, Font font, GLFont.Source source) throws FontException {
+        if (manager == null || manager.tracer() == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (font == null)
+            throw new IllegalArgumentException("font may not be null");
+        GLFontMetrics metric = new GLGlyphBaker(manager.tracer(), font).measure(true);
+        return fromMetrics(manager, font.getFontName(), metric, source);
+    }
+
+    /**
+     * Create a metrics-only font from a metric map and register it.
+     *
+     * @param manager The used manager
+     * @param name    The name of the font, case sensitive
+     * @param metric  The font metric map
+     * @param source  The source of the font's atlas, or null if the font is
+     *                never drawn; the atlas must match the metric map
+     * @return The font result
+     */
+    public static IGLFont fromMetrics(FontboxManager manager, String name, GLFontMetrics metric, GLFont.Source source) {
+        if (manager == null || manager.tracer() == null)
+            throw new IllegalArgumentException("trace may not be null");
+        if (name == null)
+            throw new IllegalArgumentException("name may not be null");
+        if (metric == null)
+            throw new IllegalArgumentException("metric may not be null");
+        GLMetricsFont result = new GLMetricsFont(manager, name, metric, source);
+        result.handle = manager.allocateFont(result);
+        manager.tracer().trace("GLMetricsFont.fromMetrics", result);
+        return result;
+    }
+
+    private final FontboxManager manager;
+    private final String name;
+    private final GLFontMetrics metric;
+    private GLFont.Source source;
+    private volatile GLFont uploaded;
+    private volatile int handle = NO_HANDLE;
+
+    private GLMetricsFont(FontboxManager manager, String name, GLFontMetrics metric, GLFont.Source source) {
+        this.manager = manager;
+        this.name = name;
+        this.metric = metric;
+        this.source = source;
+    }
+
+    /**
+     * Upgrade the font by uploading its atlas. The font keeps its name,
+     * handle and metrics. Must be called on the render thread.
+     *
+     * @return The uploaded font, or null if the font has no atlas source
+     * @throws FontException Any exception which occurs when producing or
+     *                       uploading the atlas, or if the atlas does not
+     *                       match the font's metrics
+     */
+    public synchronized IGLFont upload() throws FontException {
+        if (uploaded != null || source == null)
+            return uploaded;
+        GLFontAtlasCache.Entry entry = source.load();
+        if (entry.width != (int) metric.getFontImageWidth() || entry.height != (int) metric.getFontImageHeight())
+            throw new FontException(String.format("Atlas of %s is %s x %s, metrics expect %s x %s", name,
+                entry.width, entry.height, (int) metric.getFontImageWidth(), (int) metric.getFontImageHeight()));
+        GLFont font = GLFont.fromOwner(manager, this, entry, metric);
+        font.setSource(source);
+        uploaded = font;
+        manager.tracer().trace("GLMetricsFont.upload", name, font);
+        return font;
+    }
+
+    /**
+     * Check if the font has been upgraded.
+     *
+     * @return If the font's atlas has been uploaded
+     */
+    public boolean isUploaded() {
+        return uploaded != null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getHandle() {
+        return handle;
+    }
+
+    /**
+     * Get the OpenGL texture ID for this font, upgrading the font first if it
+     * has not been uploaded. Must be called on the render thread.
+     *
+     * @return The 2D texture ID for the font, or -1 if the font cannot be
+     * drawn
+     */
+    @Override
+    public int getTextureId() {
+        GLFont font = uploaded;
+        if (font == null) {
+            try {
+                upload();
+            } catch (FontException e) {
+                manager.tracer().warn("GLMetricsFont.getTextureId", "Cannot upload font", name, e);
+                synchronized (this) {
+                    source = null;
+                }
+            }
+            font = uploaded;
+        }
+        return (font != null) ? font.getTextureId() : -1;
+    }
+
+    @Override
+    public float getScale() {
+        return IBookProperties.SCALE;
+    }
+
+    @Override
+    public GLFontMetrics getMetric() {
+        return metric;
+    }
+
+    @Override
+    public long getTextureBytes() {
+        GLFont font = uploaded;
+        return (font != null) ? font.getTextureBytes() : 0;
+    }
+
+    @Override
+    public boolean evict() {
+        GLFont font = uploaded;
+        return font != null && font.evict();
+    }
+
+    /**
+     * Delete the font, and its texture if it has been uploaded.
+     */
+    @Override
+    public synchronized void delete(FontboxManager manager) {
+        manager.deleteFont(this);
+        if (uploaded != null)
+            uploaded.delete(manager);
+        uploaded = null;
+        source = null;
+    }
+
+    @Override
+    public String toString() {
+        return "GLMetricsFont { hash: " + System.identityHashCode(this) + ", name: " + name + ", uploaded: "
+            + (uploaded != null) + " }";
+    }
+}
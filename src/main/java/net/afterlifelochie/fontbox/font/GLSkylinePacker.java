@@ -0,0 +1,154 @@
+package net.afterlifelochie.fontbox.font;
+
+import java.util.Arrays;
+
+/**
+ * Skyline rectangle packer for glyph atlases. The top edge of the packed area
+ * is tracked as a list of horizontal segments; each rectangle is placed on the
+ * segment run which leaves it lowest (then leftmost), and the skyline is raised
+ * over it. Segments are held in flat int arrays.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLSkylinePacker {
+    private final int width, height;
+    private int[] segX, segY, segW;
+    private int segments;
+    private int usedHeight;
+
+    /**
+     * Create a new empty packer.
+     *
+     * @param width  The width of the packing area
+     * @param height The height of the packing area
+     */
+    public GLSkylinePacker(int width, int height) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("width and height must be positive");
+        this.width = width;
+        this.height = height;
+        segX = new int[16];
+        segY = new int[16];
+        segW = new int[16];
+        segW[0] = width;
+        segments = 1;
+    }
+
+    /**
+     * Place a rectangle.
+     *
+     * @param w   The rectangle width
+     * @param h   The rectangle height
+     * @param out An array of at least two elements which receives the x and y
+     *            position of the rectangle
+     * @return If the rectangle was placed; if false, the rectangle does not fit
+     * and the packer is unchanged
+     */
+    public boolean pack(int w, int h, int[] out) {
+        if (w <= 0 || h <= 0) {
+            out[0] = 0;
+            out[1] = 0;
+            return true;
+        }
+        int best = -1, bestX = 0, bestY = Integer.MAX_VALUE;
+        for (int i = 0; i < segments; i++) {
+            int y = fit(i, w, h);
+            if (y != -1 && y < bestY) {
+                best = i;
+                bestX = segX[i];
+                bestY = y;
+            }
+        }
+        if (best == -1)
+            return false;
+        raise(best, bestX, bestY + h, w);
+        usedHeight = Math.max(usedHeight, bestY + h);
+        out[0] = bestX;
+        out[1] = bestY;
+        return true;
+    }
+
+    /**
+     * Find the height at which a rectangle rests when its left edge is placed
+     * on a segment.
+     *
+     * @return The y position, or -1 if the rectangle does not fit there
+     */
+    private int fit(int index, int w, int h) {
+        int x = segX[index];
+        if (x + w > width)
+            return -1;
+        int y = 0, remaining = w;
+        for (int i = index; remaining > 0; i++) {
+            y = Math.max(y, segY[i]);
+            if (y + h > height)
+                return -1;
+            remaining -= segW[i];
+        }
+        return y;
+    }
+
+    /**
+     * Insert a new segment at the specified index and cut away the segments it
+     * covers, then merge neighbouring segments of equal height.
+     */
+    private void raise(int index, int x, int y, int w) {
+        if (segments == segX.length) {
+            int capacity = segments << 1;
+            segX = Arrays.copyOf(segX, capacity);
+            segY = Arrays.copyOf(segY, capacity);
+            segW = Arrays.copyOf(segW, capacity);
+        }
+        System.arraycopy(segX, index, segX, index + 1, segments - index);
+        System.arraycopy(segY, index, segY, index + 1, segments - index);
+        System.arraycopy(segW, index, segW, index + 1, segments - index);
+        segX[index] = x;
+        segY[index] = y;
+        segW[index] = w;
+        segments++;
+
+        int right = x + w;
+        int i = index + 1;
+        while (i < segments && segX[i] < right) {
+            int end = segX[i] + segW[i];
+            if (end <= right) {
+                remove(i);
+            } else {
+                segW[i] = end - right;
+                segX[i] = right;
+                break;
+            }
+        }
+        for (i = 0; i < segments - 1; ) {
+            if (segY[i] == segY[i + 1]) {
+                segW[i] += segW[i + 1];
+                remove(i + 1);
+            } else
+                i++;
+        }
+    }
+
+    private void remove(int index) {
+        System.arraycopy(segX, index + 1, segX, index, segments - index - 1);
+        System.arraycopy(segY, index + 1, segY, index, segments - index - 1);
+        System.arraycopy(segW, index + 1, segW, index, segments - index - 1);
+        segments--;
+    }
+
+    /**
+     * Get the height of the packed area which is in use.
+     *
+     * @return The lowest y position below every placed rectangle
+     */
+    public int getUsedHeight() {
+        return usedHeight;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
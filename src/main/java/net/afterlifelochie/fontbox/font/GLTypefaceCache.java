@@ -0,0 +1,129 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.minecraft.util.ResourceLocation;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of TTF typefaces, keyed by resource. Each typeface file is read once,
+ * and parsed once the first time a font is derived from it, so every size and
+ * mode of a typeface shares one parse. Font objects are immutable, so a parsed
+ * typeface may be derived from on any thread.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLTypefaceCache {
+    /**
+     * Reads the bytes of a typeface resource
+     */
+    public interface Reader {
+        /**
+         * Read a resource.
+         *
+         * @param location The resource
+         * @return The bytes of the resource
+         * @throws IOException Any exception which occurs when reading the resource
+         */
+        byte[] read(ResourceLocation location) throws IOException;
+    }
+
+    /**
+     * A typeface file and its parsed font
+     */
+    public static class Typeface {
+        /**
+         * The bytes of the TTF file
+         */
+        public final byte[] data;
+        private final LongAdder parses;
+        private Font font;
+
+        Typeface(byte[] data, LongAdder parses) {
+            this.data = data;
+            this.parses = parses;
+        }
+
+        /**
+         * Get the parsed typeface, parsing it on first use.
+         *
+         * @return The typeface at its default size
+         * @throws IOException         Any exception which occurs when reading the data
+         * @throws FontFormatException If the data is not a valid TTF file
+         */
+        public synchronized Font font() throws IOException, FontFormatException {
+            if (font == null) {
+                font = Font.createFont(Font.TRUETYPE_FONT, new ByteArrayInputStream(data));
+                parses.increment();
+            }
+            return font;
+        }
+
+        /**
+         * Derive the typeface at a pixel size.
+         *
+         * @param px The font pixel size
+         * @return The font at the requested size
+         * @throws IOException         Any exception which occurs when reading the data
+         * @throws FontFormatException If the data is not a valid TTF file
+         */
+        public Font derive(float px) throws IOException, FontFormatException {
+            return font().deriveFont(px);
+        }
+    }
+
+    private final Reader reader;
+    private final ConcurrentHashMap<ResourceLocation, Typeface> typefaces = new ConcurrentHashMap<>();
+    private final LongAdder parses = new LongAdder();
+
+    /**
+     * Create a new typeface cache.
+     *
+     * @param reader The reader of typeface resources
+     */
+    public GLTypefaceCache(Reader reader) {
+        if (reader == null)
+            throw new IllegalArgumentException("reader may not be null");
+        this.reader = reader;
+    }
+
+    /**
+     * Get a typeface, reading it if it is not cached. Threads racing to read
+     * the same typeface may both read it, but only one copy is kept.
+     *
+     * @param location The TTF resource
+     * @return The typeface
+     * @throws IOException Any exception which occurs when reading the resource
+     */
+    public Typeface get(ResourceLocation location) throws IOException {
+        if (location == null)
+            throw new IllegalArgumentException("location may not be null");
+        Typeface typeface = typefaces.get(location);
+        if (typeface == null) {
+            typeface = new Typeface(reader.read(location), parses);
+            Typeface raced = typefaces.putIfAbsent(location, typeface);
+            if (raced != null)
+                typeface = raced;
+        }
+        return typeface;
+    }
+
+    /**
+     * Get the number of typefaces parsed.
+     *
+     * @return The parse count
+     */
+    public long getParseCount() {
+        return parses.sum();
+    }
+
+    /**
+     * Drop every cached typeface.
+     */
+    public void invalidate() {
+        typefaces.clear();
+    }
+}
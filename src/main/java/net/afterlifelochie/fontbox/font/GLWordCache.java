@@ -0,0 +1,306 @@
+package net.afterlifelochie.fontbox.font;
+
+import net.afterlifelochie.fontbox.api.formatting.style.DecorationStyle;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of word measurements, keyed by font handle, decorations,
+ * kerning flag and word. Book text repeats the same words constantly, so
+ * layout can look a word up instead of measuring it glyph by glyph. The
+ * cache is split into segments, each an open addressing table with linear
+ * probing, so lookups allocate nothing and threads laying out different
+ * books rarely share a lock. When a segment is full, an entry is evicted by
+ * the CLOCK algorithm: entries used since the hand last passed them get a
+ * second chance.
+ *
+ * @author AfterLifeLochie
+ */
+public class GLWordCache {
+    /**
+     * The default number of words held
+     */
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    /**
+     * The value returned for a word which is not cached
+     */
+    public static final long MISSING = Long.MIN_VALUE;
+
+    /**
+     * The number of segments
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * One lock's share of the cache
+     */
+    private final class Segment {
+        final int[] hashes, fonts, styles;
+        final String[] words;
+        final long[] metrics;
+        final boolean[] referenced;
+        final int mask, limit;
+        int size, hand;
+
+        Segment(int limit) {
+            int capacity = Integer.highestOneBit(Math.max(limit * 4 / 3, 2) - 1) << 1;
+            this.hashes = new int[capacity];
+            this.fonts = new int[capacity];
+            this.styles = new int[capacity];
+            this.words = new String[capacity];
+            this.metrics = new long[capacity];
+            this.referenced = new boolean[capacity];
+            this.mask = capacity - 1;
+            this.limit = limit;
+        }
+
+        private int find(int hash, int font, int style, String word) {
+            for (int i = hash & mask; words[i] != null; i = (i + 1) & mask)
+                if (hashes[i] == hash && fonts[i] == font && styles[i] == style && words[i].equals(word))
+                    return i;
+            return -1;
+        }
+
+        synchronized long get(int hash, int font, int style, String word) {
+            int i = find(hash, font, style, word);
+            if (i == -1)
+                return MISSING;
+            referenced[i] = true;
+            return metrics[i];
+        }
+
+        /**
+         * @return If an entry was evicted to make room
+         */
+        synchronized boolean put(int hash, int font, int style, String word, long value, long since) {
+            if (generation.get() != since)
+                return false;
+            int i = find(hash, font, style, word);
+            if (i != -1) {
+                metrics[i] = value;
+                return false;
+            }
+            boolean evicted = false;
+            if (size >= limit) {
+                evict();
+                evicted = true;
+            }
+            for (i = hash & mask; words[i] != null; i = (i + 1) & mask)
+                ;
+            hashes[i] = hash;
+            fonts[i] = font;
+            styles[i] = style;
+            words[i] = word;
+            metrics[i] = value;
+            referenced[i] = false;
+            size++;
+            return evicted;
+        }
+
+        private void evict() {
+            while (true) {
+                if (words[hand] != null) {
+                    if (!referenced[hand]) {
+                        remove(hand);
+                        return;
+                    }
+                    referenced[hand] = false;
+                }
+                hand = (hand + 1) & mask;
+            }
+        }
+
+        /**
+         * Remove an entry, shifting back the entries after it which probed
+         * past it so that no probe sequence is broken.
+         */
+        private void remove(int i) {
+            words[i] = null;
+            size--;
+            for (int j = (i + 1) & mask; words[j] != null; j = (j + 1) & mask) {
+                int home = hashes[j] & mask;
+                boolean stays = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+                if (stays)
+                    continue;
+                hashes[i] = hashes[j];
+                fonts[i] = fonts[j];
+                styles[i] = styles[j];
+                words[i] = words[j];
+                metrics[i] = metrics[j];
+                referenced[i] = referenced[j];
+                words[j] = null;
+                i = j;
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            Arrays.fill(words, null);
+            size = 0;
+            hand = 0;
+        }
+
+        synchronized void clear(int font) {
+            for (int i = 0; i <= mask; )
+                if (words[i] != null && fonts[i] == font)
+                    remove(i); // another entry may be shifted into slot i
+                else
+                    i++;
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    /**
+     * Incremented before every invalidation, so a measurement taken before
+     * it is never stored after it
+     */
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    /**
+     * Create a new word cache.
+     *
+     * @param capacity The number of words to hold
+     */
+    public GLWordCache(int capacity) {
+        if (capacity < SEGMENTS)
+            throw new IllegalArgumentException("capacity must be at least " + SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(capacity / SEGMENTS);
+    }
+
+    private static int style(EnumSet<DecorationStyle> decorations, boolean kerned) {
+        int style = (kerned) ? 1 << 31 : 0;
+        if (decorations != null)
+            for (DecorationStyle decoration : decorations)
+                style |= 1 << decoration.ordinal();
+        return style;
+    }
+
+    private static int hash(int font, int style, String word) {
+        int hash = word.hashCode() * 31 + font * 127 + style;
+        return hash ^ (hash >>> 16);
+    }
+
+    private Segment segment(int hash) {
+        return segments[(hash >>> 12) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Look up the measurement of a word.
+     *
+     * @param font        The handle of the font the word is measured in
+     * @param decorations The decorations of the word
+     * @param kerned      If kerning is enabled on the font
+     * @param word        The word
+     * @return The measurement, or {@link GLWordCache#MISSING} if the word is
+     * not cached
+     */
+    public long get(int font, EnumSet<DecorationStyle> decorations, boolean kerned, String word) {
+        int style = style(decorations, kerned), hash = hash(font, style, word);
+        long value = segment(hash).get(hash, font, style, word);
+        if (value == MISSING)
+            misses.increment();
+        else
+            hits.increment();
+        return value;
+    }
+
+    /**
+     * Get the current generation of the cache. A measurement is only stored
+     * if no invalidation happened since the generation it was taken in, so a
+     * word measured while its font is deleted and its handle handed out again
+     * is never stored against the new font.
+     *
+     * @return The generation
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Cache the measurement of a word, evicting another word if the cache is
+     * full. The measurement is dropped if the cache has been invalidated
+     * since the generation it was taken in.
+     *
+     * @param font        The handle of the font the word is measured in
+     * @param decorations The decorations of the word
+     * @param kerned      If kerning is enabled on the font
+     * @param word        The word
+     * @param value       The measurement
+     * @param since       The {@link GLWordCache#generation()} read before the
+     *                    font was checked and the word measured
+     */
+    public void put(int font, EnumSet<DecorationStyle> decorations, boolean kerned, String word, long value,
+                    long since) {
+        int style = style(decorations, kerned), hash = hash(font, style, word);
+        if (segment(hash).put(hash, font, style, word, value, since))
+            evictions.increment();
+    }
+
+    /**
+     * Get the number of words cached.
+     *
+     * @return The size of the cache
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /**
+     * Get the number of lookups which found the word.
+     *
+     * @return The hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups which did not find the word.
+     *
+     * @return The miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of words evicted to make room for others.
+     *
+     * @return The eviction count
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Drop every cached word.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    /**
+     * Drop every word cached against a font handle.
+     *
+     * @param font The handle of the font
+     */
+    public void invalidate(int font) {
+        generation.incrementAndGet();
+        for (Segment segment : segments)
+            segment.clear(font);
+    }
+}
@@ -1,20 +1,54 @@
 package net.afterlifelochie.fontbox.layout;
 
 import net.afterlifelochie.fontbox.api.exception.LayoutException;
+import net.afterlifelochie.fontbox.api.formatting.layout.CompilerHint;
 import net.afterlifelochie.fontbox.api.layout.IElement;
 import net.afterlifelochie.fontbox.api.layout.IPage;
 import net.afterlifelochie.fontbox.api.tracer.ITracer;
+import net.afterlifelochie.fontbox.document.CompilerHintElement;
 import net.afterlifelochie.fontbox.document.Document;
 import net.afterlifelochie.fontbox.document.Element;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 public class DocumentProcessor {
+    /**
+     * A run of elements between page breaks, laid out on its own writer
+     */
+    private static class Section extends RecursiveAction {
+        final ITracer trace;
+        final PageWriter writer;
+        final boolean fresh;
+        final List<IElement> elements = new ArrayList<>();
+        Exception failure;
+
+        Section(ITracer trace, PageWriter writer, boolean fresh) {
+            this.trace = trace;
+            this.writer = writer;
+            this.fresh = fresh;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (fresh)
+                    writer.current();
+                for (IElement element : elements)
+                    element.layout(trace, writer);
+            } catch (IOException | LayoutException e) {
+                failure = e;
+            }
+        }
+    }
+
     public static IElement getElementAt(IPage page, int x, int y) {
-        for (IElement element : page.allElements())
-            if (element.bounds().encloses(x, y))
-                return element;
-        return null;
+        return page.elementAt(x, y);
     }
 
     /**
@@ -38,7 +72,73 @@ public class DocumentProcessor {
      *                         element on a Page
      */
     public static void generatePages(ITracer trace, Document doc, PageWriter writer) throws IOException, LayoutException {
-        for (IElement element : doc.elements)
-            element.layout(trace, writer);
+        generatePages(trace, doc, writer, false);
+    }
+
+    /**
+     * <p>
+     * Generate a list of formatted Pages from a Document and a Page layout
+     * configuration, as {@link #generatePages(ITracer, Document, PageWriter)}
+     * does.
+     * </p>
+     * <p>
+     * In parallel, the Document is cut at each page break into sections which
+     * each start on a new page. Every section after the first is laid out on
+     * a writer of its own on the common fork-join pool (or the pool of the
+     * calling task), then its pages and anchors are appended to the writer in
+     * order, so the pages are the same as those laid out serially. The tracer
+     * must accept traces from several threads. If an element fails, the
+     * writer holds the pages up to the failing element, but elements of later
+     * sections may have been laid out.
+     * </p>
+     *
+     * @param trace    The debugger
+     * @param doc      The Document to transform
+     * @param writer   The page writer
+     * @param parallel If the sections of the Document may be laid out on the
+     *                 fork-join pool
+     * @throws IOException     Any I/O exception which occurs when reading from nested
+     *                         streams or when writing to the Page output stream
+     * @throws LayoutException Any layout exception which occurs when attempting to place an
+     *                         element on a Page
+     */
+    public static void generatePages(ITracer trace, Document doc, PageWriter writer, boolean parallel)
+        throws IOException, LayoutException {
+        List<Section> sections = new ArrayList<>();
+        Section section = new Section(trace, writer, false);
+        for (IElement element : doc.elements) {
+            if (parallel && isPageBreak(element)) {
+                sections.add(section);
+                section = new Section(trace, writer.section(), true);
+            } else
+                section.elements.add(element);
+        }
+        sections.add(section);
+
+        if (sections.size() == 1 || !writer.atEnd()) {
+            // Nothing to split, or a page break would move onto a written page
+            for (IElement element : doc.elements)
+                element.layout(trace, writer);
+            return;
+        }
+
+        if (ForkJoinTask.inForkJoinPool() || ForkJoinPool.getCommonPoolParallelism() > 1)
+            ForkJoinTask.invokeAll(sections);
+        else
+            for (Section each : sections)
+                each.invoke();
+        for (Section each : sections) {
+            if (each.writer != writer)
+                writer.append(each.writer);
+            if (each.failure instanceof IOException)
+                throw (IOException) each.failure;
+            if (each.failure != null)
+                throw (LayoutException) each.failure;
+        }
+    }
+
+    private static boolean isPageBreak(IElement element) {
+        return element instanceof CompilerHintElement
+            && ((CompilerHintElement) element).types.equals(EnumSet.of(CompilerHint.PAGE_BREAK));
     }
 }
@@ -3,6 +3,7 @@ package net.afterlifelochie.fontbox.layout;
 import net.afterlifelochie.fontbox.api.layout.IPageIndex;
 
 import java.util.HashMap;
+import java.util.Map;
 
 public class PageIndex implements IPageIndex {
     private final HashMap<String, Integer> ids;
@@ -21,4 +22,15 @@ public class PageIndex implements IPageIndex {
         return (ids.containsKey(id)) ? ids.get(id) : -1;
     }
 
+    /**
+     * Push every anchor of another index, moved a number of pages along.
+     *
+     * @param other  The other index
+     * @param offset The number of pages to move the anchors by
+     */
+    void pushAll(PageIndex other, int offset) {
+        for (Map.Entry<String, Integer> id : other.ids.entrySet())
+            ids.put(id.getKey(), id.getValue() + offset);
+    }
+
 }
@@ -0,0 +1,90 @@
+package net.afterlifelochie.fontbox.layout;
+
+import net.afterlifelochie.fontbox.api.layout.ObjectBounds;
+import net.afterlifelochie.io.IntegerExclusionStream;
+
+import java.util.ArrayList;
+
+/**
+ * The skyline of one page, kept up to date as elements are written so the
+ * cursor can be placed without scanning every element on the page. The
+ * skyline holds the lowest edge of the page's non-floating elements, and the
+ * elements which still reach down to or below the cursor; elements the
+ * cursor has moved past are set aside, so a page of lines only ever holds
+ * the few tall or floating elements beside the cursor.
+ *
+ * @author AfterLifeLochie
+ */
+public class PageSkyline {
+    /**
+     * One below the lowest edge of the non-floating elements
+     */
+    private int bottom = Integer.MIN_VALUE;
+    /**
+     * The elements which reach down to or below the last queried row
+     */
+    private final ArrayList<ObjectBounds> hanging = new ArrayList<>();
+    /**
+     * The elements which end above the last queried row
+     */
+    private final ArrayList<ObjectBounds> passed = new ArrayList<>();
+    /**
+     * The last queried row
+     */
+    private int row = Integer.MIN_VALUE;
+
+    /**
+     * Add an element written to the page.
+     *
+     * @param bounds The bounds of the element
+     */
+    public void add(ObjectBounds bounds) {
+        if (bounds == null)
+            throw new IllegalArgumentException("bounds may not be null");
+        if (!bounds.floating())
+            bottom = Math.max(bottom, bounds.y + bounds.height + 1);
+        if (bounds.y + bounds.height >= row)
+            hanging.add(bounds);
+        else
+            passed.add(bounds);
+    }
+
+    /**
+     * Get the row the cursor moves down to: below every non-floating element,
+     * or where it is if it is already below them.
+     *
+     * @param y The row of the cursor
+     * @return The new row of the cursor
+     */
+    public int top(int y) {
+        return Math.max(y, bottom);
+    }
+
+    /**
+     * Get the column the cursor moves to on a row: the start of the largest
+     * span of the row which is not covered by, or left of, an element.
+     *
+     * @param y     The row
+     * @param width The width of the page
+     * @return The new column of the cursor
+     */
+    public int left(int y, int width) {
+        if (y < row) {
+            // The cursor moved up; elements set aside may reach it again
+            hanging.addAll(passed);
+            passed.clear();
+        }
+        row = y;
+        IntegerExclusionStream window = new IntegerExclusionStream(0, width);
+        for (int i = hanging.size() - 1; i >= 0; i--) {
+            ObjectBounds bb = hanging.get(i);
+            if (bb.y + bb.height < y) {
+                passed.add(bb);
+                hanging.set(i, hanging.get(hanging.size() - 1));
+                hanging.remove(hanging.size() - 1);
+            } else if (y >= bb.y)
+                window.excludeRange(0, bb.x + bb.width);
+        }
+        return window.largest();
+    }
+}
@@ -1,17 +1,20 @@
 package net.afterlifelochie.fontbox.layout;
 
 import net.afterlifelochie.fontbox.api.FontboxManager;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
 import net.afterlifelochie.fontbox.api.formatting.PageProperties;
 import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.formatting.style.TextFormatter;
 import net.afterlifelochie.fontbox.api.layout.*;
+import net.afterlifelochie.fontbox.layout.components.Line;
 import net.afterlifelochie.fontbox.layout.components.LineWriter;
 import net.afterlifelochie.fontbox.layout.components.Page;
-import net.afterlifelochie.io.IntegerExclusionStream;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @SuppressWarnings("unchecked")
 public class PageWriter implements IPageWriter {
@@ -19,6 +22,8 @@ public class PageWriter implements IPageWriter {
     private final FontboxManager manager;
     private ArrayList<Page> pages = new ArrayList<>();
     private ArrayList<PageCursor> cursors = new ArrayList<>();
+    private ArrayList<PageSkyline> skylines = new ArrayList<>();
+    private Set<IGLFont> fonts = new HashSet<>();
     private PageProperties attributes;
     private PageIndex index;
     private boolean closed = false;
@@ -88,23 +93,14 @@ public class PageWriter implements IPageWriter {
                 index.push(element.identifier(), ptr);
 
             currentPage.push(element);
+            if (element instanceof Line)
+                ((Line) element).formatter.collectFonts(fonts);
 
             PageCursor current = cursor();
-            for (IElement e : currentPage.allElements()) {
-                if (e.bounds().floating())
-                    continue;
-                ObjectBounds bb = e.bounds();
-                if (bb.y + bb.height + 1 > current.y())
-                    current.top(bb.y + bb.height + 1);
-            }
-
-            IntegerExclusionStream window = new IntegerExclusionStream(0, currentPage.width);
-            for (IElement e : currentPage.allElements()) {
-                ObjectBounds bb = e.bounds();
-                if (current.y() >= bb.y && bb.y + bb.height >= current.y())
-                    window.excludeRange(0, bb.x + bb.width);
-            }
-            current.left(window.largest());
+            PageSkyline skyline = skylines.get(ptr);
+            skyline.add(element.bounds());
+            current.top(skyline.top(current.y()));
+            current.left(skyline.left(current.y(), currentPage.width));
 
             manager.tracer().trace("PageWriter.write", "pushCursor", current);
 
@@ -130,6 +126,51 @@ public class PageWriter implements IPageWriter {
             if (ptr == pages.size()) {
                 pages.add(new Page(attributes.copy()));
                 cursors.add(new PageCursor());
+                skylines.add(new PageSkyline());
+            }
+        }
+    }
+
+    /**
+     * Create an empty writer with the same page properties and manager, to
+     * lay out a section of a document on its own.
+     *
+     * @return The new writer
+     */
+    PageWriter section() {
+        return new PageWriter(attributes, manager);
+    }
+
+    /**
+     * Check if the writer is on its last page, or has no pages, so that the
+     * next page it moves to is a new page.
+     *
+     * @return If the writer is at the end of its pages
+     */
+    boolean atEnd() {
+        synchronized (lock) {
+            return ptr >= pages.size() - 1;
+        }
+    }
+
+    /**
+     * Append the pages of a section laid out on another writer, and move to
+     * the last of them. The anchors of the section are moved along with its
+     * pages.
+     *
+     * @param section The writer the section was laid out on
+     * @throws IOException If this writer is closed
+     */
+    void append(PageWriter section) throws IOException {
+        synchronized (lock) {
+            checkOpen();
+            synchronized (section.lock) {
+                index.pushAll(section.index, pages.size());
+                pages.addAll(section.pages);
+                cursors.addAll(section.cursors);
+                skylines.addAll(section.skylines);
+                fonts.addAll(section.fonts);
+                ptr = Math.max(0, pages.size() - 1);
             }
         }
     }
@@ -152,6 +193,22 @@ public class PageWriter implements IPageWriter {
         }
     }
 
+    /**
+     * Get every font used by the lines written so far.
+     *
+     * @return The fonts used
+     */
+    public Set<IGLFont> fonts() {
+        synchronized (lock) {
+            return new HashSet<>(fonts);
+        }
+    }
+
+    @Override
+    public FontboxManager manager() {
+        return manager;
+    }
+
     @Override
     public ILineWriter getLineWriter(TextFormatter formatter, AlignmentMode alignment, IElement underlyingElement) {
         return new LineWriter(this, formatter, alignment, underlyingElement);
@@ -0,0 +1,141 @@
+package net.afterlifelochie.fontbox.layout.components;
+
+import net.afterlifelochie.fontbox.api.layout.IElement;
+import net.afterlifelochie.fontbox.api.layout.ObjectBounds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Spatial index of the elements on a page. The page is cut into horizontal
+ * bands of equal height, and each element is listed in every band it
+ * touches, so a query only tests the elements in the bands it covers. Queries
+ * return the element added first among those which match, just as a scan of
+ * the elements in order would.
+ *
+ * @author AfterLifeLochie
+ */
+public class ElementGrid {
+    /**
+     * The most bands a grid is cut into
+     */
+    private static final int MAX_BANDS = 4096;
+    /**
+     * The least height of a band
+     */
+    private static final int MIN_BAND = 16;
+
+    /**
+     * The elements in the order they were added
+     */
+    private final ArrayList<IElement> elements = new ArrayList<>();
+    /**
+     * The height of each band
+     */
+    private final int band;
+    /**
+     * The positions of the elements in each band, ascending, or null
+     */
+    private final int[][] cells;
+    /**
+     * The number of elements in each band
+     */
+    private final int[] sizes;
+    /**
+     * The first and last band holding any element
+     */
+    private int first = Integer.MAX_VALUE, last = -1;
+
+    /**
+     * Create a new grid.
+     *
+     * @param height The height of the page
+     * @param band   The preferred height of a band, usually the height of a
+     *               line
+     */
+    public ElementGrid(int height, int band) {
+        height = Math.max(height, 1);
+        this.band = Math.max(Math.max(band, MIN_BAND), (height + MAX_BANDS - 1) / MAX_BANDS);
+        this.cells = new int[height / this.band + 1][];
+        this.sizes = new int[cells.length];
+    }
+
+    private int bandOf(int y) {
+        if (y < 0)
+            return 0;
+        return Math.min(y / band, cells.length - 1);
+    }
+
+    /**
+     * Add an element to the grid. Elements without bounds are kept in order
+     * but never match a query.
+     *
+     * @param element The element
+     */
+    public void add(IElement element) {
+        int position = elements.size();
+        elements.add(element);
+        ObjectBounds bb = element.bounds();
+        if (bb == null)
+            return;
+        int from = bandOf(Math.min(bb.y, bb.y + bb.height)), to = bandOf(Math.max(bb.y, bb.y + bb.height));
+        for (int i = from; i <= to; i++) {
+            if (cells[i] == null)
+                cells[i] = new int[4];
+            else if (sizes[i] == cells[i].length)
+                cells[i] = Arrays.copyOf(cells[i], sizes[i] * 2);
+            cells[i][sizes[i]++] = position;
+        }
+        first = Math.min(first, from);
+        last = Math.max(last, to);
+    }
+
+    /**
+     * Find the first element which intersects a bounding box.
+     *
+     * @param bounds The bounding box
+     * @return The element, or null if none intersect
+     */
+    public IElement intersecting(ObjectBounds bounds) {
+        int from = Math.max(first, bandOf(Math.min(bounds.y, bounds.y + bounds.height)));
+        int to = Math.min(last, bandOf(Math.max(bounds.y, bounds.y + bounds.height)));
+        int best = Integer.MAX_VALUE;
+        for (int i = from; i <= to; i++)
+            for (int j = 0; j < sizes[i]; j++) {
+                int position = cells[i][j];
+                if (position >= best)
+                    break;
+                if (elements.get(position).bounds().intersects(bounds)) {
+                    best = position;
+                    break;
+                }
+            }
+        return (best != Integer.MAX_VALUE) ? elements.get(best) : null;
+    }
+
+    /**
+     * Find the first element which encloses a point.
+     *
+     * @param x The x coordinate of the point
+     * @param y The y coordinate of the point
+     * @return The element, or null if none enclose the point
+     */
+    public IElement enclosing(int x, int y) {
+        int i = bandOf(y);
+        for (int j = 0; j < sizes[i]; j++) {
+            IElement element = elements.get(cells[i][j]);
+            if (element.bounds().encloses(x, y))
+                return element;
+        }
+        return null;
+    }
+
+    /**
+     * Get the elements in the order they were added.
+     *
+     * @return The elements
+     */
+    public ArrayList<IElement> elements() {
+        return elements;
+    }
+}
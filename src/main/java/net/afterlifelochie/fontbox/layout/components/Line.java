@@ -3,7 +3,7 @@ package net.afterlifelochie.fontbox.layout.components;
 import net.afterlifelochie.fontbox.api.exception.LayoutException;
 import net.afterlifelochie.fontbox.api.font.IGLFont;
 import net.afterlifelochie.fontbox.api.font.IGLFontMetrics;
-import net.afterlifelochie.fontbox.api.font.IGLGlyphMetric;
+import net.afterlifelochie.fontbox.api.formatting.style.ColorFormat;
 import net.afterlifelochie.fontbox.api.formatting.style.DecorationStyle;
 import net.afterlifelochie.fontbox.api.formatting.style.TextFormat;
 import net.afterlifelochie.fontbox.api.formatting.style.TextFormatter;
@@ -23,6 +23,7 @@ import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
 import org.lwjgl.opengl.GL11;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * One formatted line with a spacing and line-height
@@ -48,6 +49,16 @@ public class Line extends Element {
      */
     public final int space_size;
 
+    /**
+     * The glyphs of the line grouped by the font which draws them, built on
+     * the first render: the font of each batch and the end of each batch in
+     * the glyph arrays, then the index, format and x position of each glyph
+     */
+    private IGLFont[] batchFaces;
+    private int[] batchEnds, batchGlyphs;
+    private TextFormat[] batchFormats;
+    private float[] batchXs;
+
     /**
      * Create a new line
      *
@@ -99,96 +110,196 @@ public class Line extends Element {
     }
 
     private void safeSwitchToFont(IGLFont font) throws RenderException {
-        if (font.getTextureId() == -1)
+        int texture = font.getTextureId();
+        if (texture == -1)
             throw new RenderException("Font object not loaded!");
         IGLFontMetrics metric = font.getMetric();
         if (metric == null)
             throw new RenderException("Font object not loaded!");
-        GlStateManager.bindTexture(font.getTextureId());
+        GlStateManager.bindTexture(texture);
         GlStateManager.scale(font.getScale(), font.getScale(), 1.0f);
+        if (font.isDistanceField()) {
+            GlStateManager.enableAlpha();
+            GlStateManager.alphaFunc(GL11.GL_GREATER, 0.5f);
+        } else
+            GlStateManager.alphaFunc(GL11.GL_GREATER, 0.1f);
+    }
+
+    /**
+     * Place every glyph of the line and group the glyphs by the font which
+     * draws them, so each font is bound once per line.
+     */
+    private void batch() {
+        IGLFont[] faces = new IGLFont[line.length];
+        TextFormat[] formats = new TextFormat[line.length];
+        float[] xs = new float[line.length];
+        float x = 0;
+        TextFormatter.Cursor runs = formatter.cursor();
+        TextFormat decorator = runs.at(0);
+        IGLFont prevFont = null;
+        char prev = 0;
+        for (int i = 0; i < line.length; i++) {
+            char c = line[i];
+            if (c == ' ') {
+                x += space_size;
+                prevFont = null;
+                continue;
+            }
+            TextFormat newDecorator = runs.at(i);
+            if (newDecorator != null)
+                decorator = newDecorator;
+            IGLFontMetrics metric = decorator.font.getMetric();
+            if (decorator.font == prevFont)
+                x += metric.kerningOf(prev, c);
+            prevFont = decorator.font;
+            prev = c;
+            int row = metric.rowOf(c);
+            if (row == -1) // blank glyph?
+                continue;
+            faces[i] = decorator.font.resolve(c);
+            formats[i] = decorator;
+            xs[i] = x;
+            x += metric.widthAt(row);
+        }
+
+        // Number the fonts in order of first use, then sort the glyphs by font
+        IGLFont[] distinct = new IGLFont[4];
+        int[] group = new int[line.length], counts = new int[4];
+        int groups = 0, glyphs = 0;
+        for (int i = 0; i < line.length; i++) {
+            group[i] = -1;
+            if (faces[i] == null)
+                continue;
+            int g = 0;
+            while (g < groups && distinct[g] != faces[i])
+                g++;
+            if (g == groups) {
+                if (groups == distinct.length) {
+                    distinct = Arrays.copyOf(distinct, groups * 2);
+                    counts = Arrays.copyOf(counts, groups * 2);
+                }
+                distinct[groups++] = faces[i];
+            }
+            group[i] = g;
+            counts[g]++;
+            glyphs++;
+        }
+        int[] ends = new int[groups], next = new int[groups];
+        for (int g = 0, end = 0; g < groups; g++) {
+            next[g] = end;
+            end += counts[g];
+            ends[g] = end;
+        }
+        int[] order = new int[glyphs];
+        TextFormat[] orderFormats = new TextFormat[glyphs];
+        float[] orderXs = new float[glyphs];
+        for (int i = 0; i < line.length; i++) {
+            if (group[i] == -1)
+                continue;
+            int k = next[group[i]]++;
+            order[k] = i;
+            orderFormats[k] = formats[i];
+            orderXs[k] = xs[i];
+        }
+        batchFaces = Arrays.copyOf(distinct, groups);
+        batchEnds = ends;
+        batchGlyphs = order;
+        batchFormats = orderFormats;
+        batchXs = orderXs;
+    }
+
+    /**
+     * Check whether a font the glyphs were grouped under has since been
+     * deleted, so a composite font resolves those glyphs again.
+     */
+    private boolean isStale() {
+        for (IGLFont face : batchFaces)
+            if (face.getMetric() == null)
+                return true;
+        return false;
     }
 
     @Override
     public void render(GuiScreen gui, int mx, int my, float frame) throws RenderException {
-        float x = 0, y = 0;
         if (line.length == 0)
             return;
+        if (batchFaces == null || isStale())
+            batch();
+
         GlStateManager.pushMatrix();
         GlStateManager.enableBlend();
         GlStateManager.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+        for (int b = 0, start = 0; b < batchFaces.length; start = batchEnds[b++]) {
+            IGLFont face = batchFaces[b];
+            IGLFontMetrics metric = face.getMetric();
+            GlStateManager.pushMatrix();
+            safeSwitchToFont(face);
+            GlStateManager.translate(bounds().x, bounds().y, 0);
 
-        TextFormat decorator = formatter.getFormat(0);
-        GlStateManager.pushMatrix();
-        safeSwitchToFont(decorator.font);
-        GlStateManager.translate(bounds().x, bounds().y, 0);
-
-        for (int i = 0; i < line.length; i++) {
-            char c = line[i];
-            if (c != ' ') {
-                TextFormat newDecorator = formatter.getFormat(i);
-                if (newDecorator != null && !newDecorator.equals(decorator)) {
-                    if (newDecorator.font != decorator.font) {
-                        GlStateManager.popMatrix();
-                        GlStateManager.pushMatrix();
-                        safeSwitchToFont(newDecorator.font);
-                        GlStateManager.translate(bounds().x, bounds().y, 0);
-                    }
-                    decorator = newDecorator;
-                }
-
-                IGLFontMetrics metric = decorator.font.getMetric();
-                IGLGlyphMetric glyph = metric.getGlyphs().get((int) c);
-                if (glyph == null) // blank glyph?
+            Tessellator tessellator = Tessellator.getInstance();
+            BufferBuilder buffer = tessellator.getBuffer();
+            buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_TEX_COLOR);
+            boolean underlined = false;
+            int end = batchEnds[b];
+            for (int k = start; k < end; k++) {
+                int row = metric.rowOf(line[batchGlyphs[k]]);
+                if (row == -1)
                     continue;
+                TextFormat format = batchFormats[k];
+                float tilt = format.decorations.contains(DecorationStyle.ITALIC) ? 5.55f : 0.0f;
+                renderGlyphInPlace(buffer, metric, row, batchXs[k], 0, -tilt, tilt, format.color);
+                if (format.decorations.contains(DecorationStyle.BOLD))
+                    renderGlyphInPlace(buffer, metric, row, batchXs[k] + 0.5f, 0.5f, -tilt, tilt, format.color);
+                underlined |= format.decorations.contains(DecorationStyle.UNDERLINE);
+            }
+            tessellator.draw();
 
-                if (decorator.color == null)
-                    GlStateManager.color(0.0f, 0.0f, 0.0f, 1.0f);
-                else
-                    GlStateManager.color(decorator.color.redF(), decorator.color.greenF(), decorator.color.blueF(),
-                        decorator.color.alphaF());
-
-                float tiltTop = 0.0f, tiltBottom = 0.0f;
-                if (decorator.decorations.contains(DecorationStyle.ITALIC)) {
-                    tiltTop = -5.55f;
-                    tiltBottom = 5.55f;
-                }
-
-                boolean underline = decorator.decorations.contains(DecorationStyle.UNDERLINE);
-                renderGlyphInPlace(metric, glyph, x, y, tiltTop, tiltBottom, underline);
-                if (decorator.decorations.contains(DecorationStyle.BOLD))
-                    renderGlyphInPlace(metric, glyph, x + 0.5f, y + 0.5f, tiltTop, tiltBottom, underline);
-
-                x += glyph.getWidth();
-            } else
-                x += space_size;
+            for (int k = start; underlined && k < end; k++) {
+                TextFormat format = batchFormats[k];
+                if (!format.decorations.contains(DecorationStyle.UNDERLINE))
+                    continue;
+                int row = metric.rowOf(line[batchGlyphs[k]]);
+                if (row == -1)
+                    continue;
+                setColor(format.color);
+                float tilt = format.decorations.contains(DecorationStyle.ITALIC) ? 5.55f : 0.0f;
+                double y = metric.heightAt(row) * 0.75;
+                GLUtils.drawLine(batchXs[k], y, batchXs[k] + metric.widthAt(row) + tilt, y, 1.0);
+            }
+            GlStateManager.popMatrix();
         }
 
-        GlStateManager.popMatrix();
-
+        GlStateManager.alphaFunc(GL11.GL_GREATER, 0.1f);
         GlStateManager.disableBlend();
         GlStateManager.popMatrix();
     }
 
-    private void renderGlyphInPlace(IGLFontMetrics metric, IGLGlyphMetric glyph, float x, float y, float tiltTop, float tiltBottom, boolean underline) {
-        final double z = 1.0;
-        double u = glyph.getUx() / metric.getFontImageWidth();
-        double v = (glyph.getVy() - glyph.getAscent()) / metric.getFontImageHeight();
-        double us = glyph.getWidth() / metric.getFontImageWidth();
-        double vs = glyph.getHeight() / metric.getFontImageHeight();
-
-        Tessellator tessellator = Tessellator.getInstance();
-        BufferBuilder buffer = tessellator.getBuffer();
-        buffer.begin(GL11.GL_QUADS, DefaultVertexFormats.POSITION_TEX);
-
-        buffer.pos(x + tiltTop, y + glyph.getHeight(), z).tex(u, v + vs).endVertex();
-        buffer.pos(x + tiltTop + glyph.getWidth(), y + glyph.getHeight(), z).tex(u + us, v + vs).endVertex();
-        buffer.pos(x + tiltBottom + glyph.getWidth(), y, z).tex(u + us, v).endVertex();
-        buffer.pos(x + tiltBottom, y, z).tex(u, v).endVertex();
+    private static void setColor(ColorFormat color) {
+        if (color == null)
+            GlStateManager.color(0.0f, 0.0f, 0.0f, 1.0f);
+        else
+            GlStateManager.color(color.redF(), color.greenF(), color.blueF(), color.alphaF());
+    }
 
-        tessellator.draw();
+    private void renderGlyphInPlace(BufferBuilder buffer, IGLFontMetrics metric, int row, float x, float y, float tiltTop, float tiltBottom, ColorFormat color) {
+        final double z = 1.0;
+        int width = metric.widthAt(row), height = metric.heightAt(row);
+        double u = metric.uAt(row) / metric.getFontImageWidth();
+        double v = (metric.vAt(row) - metric.texAscentAt(row)) / metric.getFontImageHeight();
+        double us = metric.texWidthAt(row) / metric.getFontImageWidth();
+        double vs = metric.texHeightAt(row) / metric.getFontImageHeight();
+        float r = 0.0f, g = 0.0f, b = 0.0f, a = 1.0f;
+        if (color != null) {
+            r = color.redF();
+            g = color.greenF();
+            b = color.blueF();
+            a = color.alphaF();
+        }
 
-        if (underline)
-            GLUtils.drawLine(x, y + glyph.getHeight() * 0.75, x + glyph.getWidth() + tiltBottom, y + glyph.getHeight() * 0.75, z);
+        buffer.pos(x + tiltTop, y + height, z).tex(u, v + vs).color(r, g, b, a).endVertex();
+        buffer.pos(x + tiltTop + width, y + height, z).tex(u + us, v + vs).color(r, g, b, a).endVertex();
+        buffer.pos(x + tiltBottom + width, y, z).tex(u + us, v).color(r, g, b, a).endVertex();
+        buffer.pos(x + tiltBottom, y, z).tex(u, v).color(r, g, b, a).endVertex();
     }
 
     @Override
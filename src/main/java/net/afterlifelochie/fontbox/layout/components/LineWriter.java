@@ -1,15 +1,20 @@
 package net.afterlifelochie.fontbox.layout.components;
 
+import net.afterlifelochie.fontbox.api.FontboxManager;
 import net.afterlifelochie.fontbox.api.exception.LayoutException;
-import net.afterlifelochie.fontbox.api.font.IGLGlyphMetric;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+import net.afterlifelochie.fontbox.api.font.IGLFontMetrics;
+import net.afterlifelochie.fontbox.api.formatting.PageProperties;
 import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.formatting.layout.FloatMode;
 import net.afterlifelochie.fontbox.api.formatting.style.TextFormat;
 import net.afterlifelochie.fontbox.api.formatting.style.TextFormatter;
 import net.afterlifelochie.fontbox.api.layout.*;
+import net.afterlifelochie.fontbox.font.GLWordCache;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class LineWriter implements ILineWriter {
@@ -26,6 +31,32 @@ public class LineWriter implements ILineWriter {
      * The list of words on the stack currently
      */
     private final List<String> words;
+    /**
+     * The running width of the stack's words, excluding spaces, after each word
+     */
+    private int[] widths = new int[16];
+    /**
+     * The running tallest ascent of the stack's words after each word
+     */
+    private int[] ascents = new int[16];
+    /**
+     * The offset after each of the stack's words, relative to the line,
+     * including the space after the word
+     */
+    private int[] ends = new int[16];
+    /**
+     * The words last fitted, whose measurements are kept in case a later
+     * line fits the same words at the same offsets
+     */
+    private String[] fitted;
+    /**
+     * The offset each fitted word was measured at, or -1
+     */
+    private int[] fittedAt;
+    /**
+     * The measurement of each fitted word
+     */
+    private long[] fittedMetrics;
     /**
      * The formatter for the text
      */
@@ -42,6 +73,11 @@ public class LineWriter implements ILineWriter {
      * Offset for current line
      */
     private int lineOffset;
+    /**
+     * Offset of the end of the stack's words, relative to the line, including
+     * the space after the last word
+     */
+    private int wordsOffset;
     /**
      * Current lines uid
      */
@@ -64,37 +100,167 @@ public class LineWriter implements ILineWriter {
         this.underlyingElement = underlyingElement;
     }
 
-    private void update(boolean ignoreInvalidSymbols) throws LayoutException, IOException {
+    /**
+     * Measure a word and record its width and ascent on top of the running
+     * values of the words before it. Kerning never crosses the spaces between
+     * words, so each word measures alone.
+     *
+     * @param index  The index of the word on the stack
+     * @param word   The word
+     * @param offset The offset of the word, relative to the line
+     * @param ignoreInvalidSymbols Replace unsupported symbols instead of failing
+     */
+    private void measure(int index, String word, int offset, boolean ignoreInvalidSymbols) throws LayoutException {
+        record(index, offset + word.length() + 1, measureWord(word, lineOffset + offset, ignoreInvalidSymbols));
+    }
+
+    /**
+     * Record the measurement of a word on top of the running values of the
+     * words before it.
+     *
+     * @param index   The index of the word on the stack
+     * @param end     The offset after the word, relative to the line
+     * @param metrics The measurement of the word
+     */
+    private void record(int index, int end, long metrics) {
+        if (index == widths.length) {
+            widths = Arrays.copyOf(widths, index * 2);
+            ascents = Arrays.copyOf(ascents, index * 2);
+            ends = Arrays.copyOf(ends, index * 2);
+        }
+        int width = (int) (metrics >> 32), height = (int) metrics;
+        widths[index] = (index > 0) ? widths[index - 1] + width : width;
+        ascents[index] = (index > 0) ? Math.max(ascents[index - 1], height) : height;
+        ends[index] = end;
+    }
+
+    /**
+     * Measure a word. A word in one format of a registered font is looked up
+     * in the manager's word cache first; words with unsupported symbols are
+     * never cached.
+     *
+     * @param word   The word
+     * @param at     The offset of the word in the formatter
+     * @param ignoreInvalidSymbols Replace unsupported symbols instead of failing
+     * @return The width of the word in the high half and its ascent in the
+     * low half
+     */
+    private long measureWord(String word, int at, boolean ignoreInvalidSymbols) throws LayoutException {
+        TextFormat first = formatter.getFormat(at);
+        boolean uniform = formatter.isUniform(at, at + word.length());
+        GLWordCache cache = null;
+        boolean kerned = false;
+        long since = 0;
+        if (uniform) {
+            FontboxManager manager = writer.manager();
+            if (manager != null && first.font != null) {
+                // Read the generation first, so a delete after the check drops the measurement
+                since = manager.wordCache().generation();
+                if (manager.fromHandle(first.font.getHandle()) == first.font)
+                    cache = manager.wordCache();
+            }
+        }
+        if (cache != null) {
+            kerned = first.font.getMetric().isKerningEnabled();
+            long cached = cache.get(first.font.getHandle(), first.decorations, kerned, word);
+            if (cached != GLWordCache.MISSING)
+                return cached;
+        }
+
         int width = 0, height = 0;
+        boolean substituted = false;
+        TextFormatter.Cursor formats = (uniform) ? null : formatter.cursor();
+        IGLFont prevFont = null;
+        char prev = 0;
+        for (int i = 0; i < word.length(); i++) {
+            char cz = word.charAt(i);
+            TextFormat format = (uniform) ? first : formats.at(at + i);
+            IGLFontMetrics metric = format.font.getMetric();
+            int row = metric.rowOf(cz);
+            if (row == -1) {
+                if (ignoreInvalidSymbols) {
+                    cz = '?';
+                    row = metric.rowOf(cz);
+                    substituted = true;
+                } else {
+                    throw new LayoutException(String.format("Glyph %s not supported by font %s.", cz, format.font.getName()));
+                }
+            }
+            if (format.font == prevFont)
+                width += metric.kerningOf(prev, cz);
+            prevFont = format.font;
+            prev = cz;
+            if (row == -1)
+                continue;
+            width += metric.widthAt(row);
+            height = Math.max(height, metric.ascentAt(row));
+        }
+        long metrics = ((long) width << 32) | (height & 0xffffffffL);
+        if (cache != null && !substituted)
+            cache.put(first.font.getHandle(), first.decorations, kerned, word, metrics, since);
+        return metrics;
+    }
 
+    /**
+     * Measure every word on the stack again. Only needed when the formatting
+     * under the stack has changed.
+     */
+    private void remeasure(boolean ignoreInvalidSymbols) throws LayoutException {
+        int offset = 0;
+        for (int i = 0; i < words.size(); i++) {
+            measure(i, words.get(i), offset, ignoreInvalidSymbols);
+            offset += words.get(i).length() + 1;
+        }
+    }
+
+    /**
+     * Compute the bounds and space size of the stack from the running values
+     * of its last word.
+     */
+    private void update() throws IOException {
         IPage page = writer.current();
+        int count = words.size();
+        spaceSize = spaceOf(page, count);
+        bounds = boundsOf(page, writer.cursor().x(), writer.cursor().y(), count, spaceSize);
+    }
 
-        int offset = lineOffset;
-        int wordsWidth = 0;
-        for (String word : words) {
-            char[] chars = word.toCharArray();
-            for (char cz : chars) {
-                TextFormat format = formatter.getFormat(offset);
-                IGLGlyphMetric cm = format.font.getMetric().getGlyphs().get((int) cz);
-                if (cm == null) {
-                    if (ignoreInvalidSymbols) {
-                        cm = format.font.getMetric().getGlyphs().get((int) '?');
-                    } else {
-                        throw new LayoutException(String.format("Glyph %s not supported by font %s.", cz, format.font.getName()));
-                    }
-                }
-                wordsWidth += cm.getWidth();
-                if (cm.getAscent() > height) {
-                    height = cm.getAscent();
-                }
-                offset++;
+    /**
+     * Compute the size of the spaces between a number of words from the
+     * running values of the last word.
+     *
+     * @param page  The page
+     * @param count The number of words
+     * @return The space size
+     */
+    private int spaceOf(IPage page, int count) {
+        int wordsWidth = (count > 0) ? widths[count - 1] : 0;
+        int blankWidth = page.getWidth() - page.getProperties().margin_left - page.getProperties().margin_right - wordsWidth;
+        if (alignment == AlignmentMode.JUSTIFY) {
+            float density = (float) wordsWidth / (float) page.getWidth();
+            if (density >= page.getProperties().min_line_density) {
+                int extra_px_per_space = (int) Math.floor(blankWidth / count);
+                if (extra_px_per_space > page.getProperties().min_space_size)
+                    return extra_px_per_space;
             }
-            offset++;
         }
+        return page.getProperties().min_space_size;
+    }
 
+    /**
+     * Compute the bounds of a number of words from the running values of the
+     * last word.
+     *
+     * @param page  The page
+     * @param x     The cursor x
+     * @param y     The cursor y
+     * @param count The number of words
+     * @param space The space size
+     * @return The bounds of the words
+     */
+    private ObjectBounds boundsOf(IPage page, int x, int y, int count, int space) {
+        int wordsWidth = (count > 0) ? widths[count - 1] : 0;
+        int height = (count > 0) ? ascents[count - 1] : 0;
         int blankWidth = page.getWidth() - page.getProperties().margin_left - page.getProperties().margin_right - wordsWidth;
-        spaceSize = page.getProperties().min_space_size;
-        int x = writer.cursor().x(), y = writer.cursor().y();
 
         switch (alignment) {
             case CENTER:
@@ -102,13 +268,6 @@ public class LineWriter implements ILineWriter {
                 x += (int) Math.floor(halfBlank);
                 break;
             case JUSTIFY:
-                float density = (float) wordsWidth / (float) page.getWidth();
-                if (density >= page.getProperties().min_line_density) {
-                    int extra_px_per_space = (int) Math.floor(blankWidth / words.size());
-                    if (extra_px_per_space > page.getProperties().min_space_size)
-                        spaceSize = extra_px_per_space;
-                }
-                break;
             case LEFT:
             /* Do nothing */
                 break;
@@ -117,26 +276,40 @@ public class LineWriter implements ILineWriter {
                 break;
         }
 
-        width = wordsWidth + Math.max(words.size() - 2, 0) * spaceSize;
-        bounds = new ObjectBounds(x, y, width, Math.max(height, page.getProperties().line_height_size), FloatMode.NONE);
+        int width = wordsWidth + Math.max(count - 2, 0) * space;
+        return new ObjectBounds(x, y, width, Math.max(height, page.getProperties().line_height_size), FloatMode.NONE);
+    }
+
+    /**
+     * Check if a number of words fits at the cursor.
+     *
+     * @param page  The page
+     * @param x     The cursor x
+     * @param y     The cursor y
+     * @param count The number of words
+     * @param clear If nothing on the page can collide with the words
+     * @return If the words fit on the page without colliding
+     */
+    private boolean fits(IPage page, int x, int y, int count, boolean clear) {
+        ObjectBounds future = boundsOf(page, x, y, count, spaceOf(page, count));
+        return page.insidePage(future) && (clear || page.intersectsElement(future) == null);
     }
 
     @Override
     public Line emit() {
-        StringBuilder words = new StringBuilder();
+        StringBuilder words = new StringBuilder(wordsOffset);
         for (int i = 0; i < this.words.size(); i++) {
             String what = this.words.get(i);
             words.append(what);
             if (i < this.words.size() - 1)
                 words.append(" ");
         }
-        int offset = 0;
-        for (String word : this.words)
-            offset += word.length() + 1;
+        int offset = wordsOffset;
         Line what = new Line(words.toString().toCharArray(), formatter.getFormatter(lineOffset, offset), bounds, spaceSize, underlyingElement);
         bounds = null;
         spaceSize = 0;
         lineOffset += offset;
+        wordsOffset = 0;
         this.words.clear();
         return what;
     }
@@ -148,26 +321,126 @@ public class LineWriter implements ILineWriter {
 
     @Override
     public void push(String word, boolean ignoreInvalidSymbols) throws LayoutException, IOException {
+        measure(words.size(), word, wordsOffset, ignoreInvalidSymbols);
         words.add(word);
-        update(ignoreInvalidSymbols);
+        wordsOffset += word.length() + 1;
+        update();
     }
 
 
     @Override
     public String pop(boolean ignoreInvalidSymbols) throws LayoutException, IOException {
         String word = words.remove(words.size() - 1);
+        wordsOffset -= word.length() + 1;
 
-        int offset = 0;
-        for (String wd : words)
-            offset += wd.length() + 1;
-
-        formatter.cleanAfter(offset);
+        if (formatter.cleanAfter(wordsOffset)) {
+            fitted = null;
+            remeasure(ignoreInvalidSymbols);
+        }
 
-        update(ignoreInvalidSymbols);
+        update();
         return word;
     }
 
 
+    /**
+     * <p>
+     * Push the longest run of words which fits at the cursor. The result is
+     * the same as pushing the words one at a time until one does not fit and
+     * popping that word, but each word is measured at most once.
+     * </p>
+     * <p>
+     * When nothing on the page lies at or below the cursor and the line's
+     * free span ends inside the page, a line which fits still fits with its
+     * last word removed, so the run is found by galloping and binary search
+     * over the running widths. Otherwise the words are tried in order. The
+     * measurement of each word is kept until the formatting changes, so words
+     * looked at past the end of one line are not measured again for the
+     * next.
+     * </p>
+     *
+     * @param words                The words
+     * @param from                 The index of the first word to push
+     * @param to                   The index after the last word to push
+     * @param ignoreInvalidSymbols Replace unsupported symbols instead of
+     *                             failing
+     * @return The number of words pushed
+     * @throws LayoutException If a word which would be pushed holds an
+     *                         unsupported symbol
+     * @throws IOException     Any exception which occurs when reading the page
+     */
+    public int fit(String[] words, int from, int to, boolean ignoreInvalidSymbols) throws LayoutException, IOException {
+        IPage page = writer.current();
+        PageProperties properties = page.getProperties();
+        int x = writer.cursor().x(), y = writer.cursor().y();
+        int base = this.words.size();
+
+        boolean clear = page.intersectsElement(new ObjectBounds(0, y, page.getWidth(), page.getHeight() - y, FloatMode.NONE)) == null;
+        boolean ordered = clear && properties.min_space_size >= 0 && x <= properties.margin_left + properties.margin_right;
+
+        if (fitted != words) {
+            fitted = words;
+            fittedAt = new int[words.length];
+            fittedMetrics = new long[words.length];
+            Arrays.fill(fittedAt, -1);
+        }
+
+        // lo words are known to fit and hi words are known not to, or cannot be measured
+        int lo = 0, hi = to - from + 1, measured = 0;
+        boolean bracketed = false;
+        LayoutException failure = null;
+        while (hi - lo > 1) {
+            int next = !ordered ? lo + 1 : bracketed ? (lo + hi) >>> 1 : Math.min(Math.max(lo * 2, 1), hi - 1);
+            while (measured < next) {
+                int index = base + measured, source = from + measured;
+                int offset = (index > 0) ? ends[index - 1] : 0;
+                if (fittedAt[source] != lineOffset + offset) {
+                    try {
+                        fittedMetrics[source] = measureWord(words[source], lineOffset + offset, ignoreInvalidSymbols);
+                    } catch (LayoutException e) {
+                        failure = e;
+                        hi = measured + 1;
+                        break;
+                    }
+                    fittedAt[source] = lineOffset + offset;
+                }
+                record(index, offset + words[source].length() + 1, fittedMetrics[source]);
+                if (ordered && widths[index] < ((index > 0) ? widths[index - 1] : 0)) {
+                    // A word narrower than nothing breaks the ordering; start over in order
+                    ordered = false;
+                    lo = 0;
+                    next = 1;
+                }
+                measured++;
+            }
+            if (next >= hi || next <= lo)
+                continue;
+            if (fits(page, x, y, base + next, clear))
+                lo = next;
+            else {
+                hi = next;
+                bracketed = true;
+            }
+        }
+
+        for (int i = 0; i < lo; i++) {
+            this.words.add(words[from + i]);
+            wordsOffset += words[from + i].length() + 1;
+        }
+        if (lo < to - from) {
+            if (failure != null && lo == measured)
+                throw failure;
+            // Back out the word which did not fit, as pop does
+            if (formatter.cleanAfter(wordsOffset)) {
+                fitted = null;
+                remeasure(ignoreInvalidSymbols);
+            }
+            update();
+        } else if (lo > 0)
+            update();
+        return lo;
+    }
+
     @Override
     public int size() {
         return words.size();
@@ -20,13 +20,13 @@ public class Page extends Container implements IPage {
     private PageProperties properties;
 
     /**
-     * The list of static elements on the page
+     * The static elements on the page
      */
-    private ArrayList<IElement> staticElements = new ArrayList<>();
+    private ElementGrid staticElements;
     /**
-     * The list of dynamic elements on the page
+     * The dynamic elements on the page
      */
-    private ArrayList<IElement> dynamicElements = new ArrayList<>();
+    private ElementGrid dynamicElements;
 
     /**
      * Initialize a new Page with a specified set of page layout properties.
@@ -36,6 +36,8 @@ public class Page extends Container implements IPage {
     public Page(PageProperties properties) {
         super(properties.width, properties.height);
         this.properties = properties;
+        this.staticElements = new ElementGrid(properties.height, properties.line_height_size);
+        this.dynamicElements = new ElementGrid(properties.height, properties.line_height_size);
     }
 
     public PageProperties getProperties() {
@@ -44,8 +46,8 @@ public class Page extends Container implements IPage {
 
     public Iterable<IElement> allElements() {
         ArrayList<IElement> all = new ArrayList<>();
-        all.addAll(staticElements);
-        all.addAll(dynamicElements);
+        all.addAll(staticElements.elements());
+        all.addAll(dynamicElements.elements());
         return all;
     }
 
@@ -55,7 +57,7 @@ public class Page extends Container implements IPage {
      * @return The list of static elements on the page
      */
     public Iterable<IElement> staticElements() {
-        return staticElements;
+        return staticElements.elements();
     }
 
     /**
@@ -64,11 +66,12 @@ public class Page extends Container implements IPage {
      * @return The list of dynamic elements on the page
      */
     public Iterable<IElement> dynamicElements() {
-        return dynamicElements;
+        return dynamicElements.elements();
     }
 
     /**
-     * Push an element onto the page, unchecked.
+     * Push an element onto the page, unchecked. The bounds of the element must
+     * not change once it is on the page.
      *
      * @param element The element to push
      */
@@ -88,10 +91,13 @@ public class Page extends Container implements IPage {
      * @return If an intersection occurs
      */
     public IElement intersectsElement(ObjectBounds bounds) {
-        for (IElement element : staticElements)
-            if (element.bounds() != null && element.bounds().intersects(bounds))
-                return element;
-        return null;
+        return staticElements.intersecting(bounds);
+    }
+
+    @Override
+    public IElement elementAt(int x, int y) {
+        IElement element = staticElements.enclosing(x, y);
+        return (element != null) ? element : dynamicElements.enclosing(x, y);
     }
 
     /**
@@ -1,6 +1,8 @@
 package net.afterlifelochie.fontbox.render;
 
+import net.afterlifelochie.fontbox.api.FontboxManager;
 import net.afterlifelochie.fontbox.api.data.IBookProperties;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
 import net.afterlifelochie.fontbox.api.layout.IIndexed;
 import net.afterlifelochie.fontbox.api.formatting.PageMode;
 import net.afterlifelochie.fontbox.api.formatting.layout.Layout;
@@ -8,6 +10,7 @@ import net.afterlifelochie.fontbox.api.layout.IElement;
 import net.afterlifelochie.fontbox.api.layout.IPage;
 import net.afterlifelochie.fontbox.api.layout.IPageIndex;
 import net.afterlifelochie.fontbox.api.tracer.ITracer;
+import net.afterlifelochie.fontbox.font.GLDynamicFont;
 import net.afterlifelochie.fontbox.layout.DocumentProcessor;
 import net.minecraft.client.gui.GuiScreen;
 import net.minecraft.client.renderer.GlStateManager;
@@ -21,6 +24,7 @@ import org.lwjgl.opengl.Util;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class BookGUI extends GuiScreen implements IIndexed {
@@ -61,6 +65,19 @@ public class BookGUI extends GuiScreen implements IIndexed {
 
     private int guiLeft, guiTop;
 
+    /**
+     * The manager holding the font references of this GUI, if any
+     */
+    private FontboxManager fontManager;
+    /**
+     * The fonts used by the pages
+     */
+    private Collection<IGLFont> fonts;
+    /**
+     * If the GUI is open
+     */
+    private boolean open = false;
+
     /**
      * <p>
      * Create a new Book rendering context on top of the existing Minecraft GUI
@@ -104,6 +121,23 @@ public class BookGUI extends GuiScreen implements IIndexed {
         internalOnPageChanged(this, ptr);
     }
 
+    /**
+     * Keep the fonts used by the pages referenced while the GUI is open, so
+     * they are never evicted from texture memory while displayed. The fonts
+     * are referenced when the GUI opens and released when it closes.
+     *
+     * @param manager The manager the fonts are registered with
+     * @param fonts   The fonts used by the pages
+     */
+    public void retainFonts(FontboxManager manager, Collection<IGLFont> fonts) {
+        if (fontManager != null)
+            fontManager.releaseFonts(this);
+        this.fontManager = manager;
+        this.fonts = fonts;
+        if (open)
+            manager.retainFonts(this, fonts);
+    }
+
     @Override
     public boolean doesGuiPauseGame() {
         return false;
@@ -114,6 +148,9 @@ public class BookGUI extends GuiScreen implements IIndexed {
         super.initGui();
         this.guiLeft = (width - bookProperties.getBookWidth()) / 2;
         this.guiTop = (height - bookProperties.getBookHeight()) / 2;
+        open = true;
+        if (fontManager != null)
+            fontManager.retainFonts(this, fonts);
     }
 
     @Override
@@ -124,6 +161,9 @@ public class BookGUI extends GuiScreen implements IIndexed {
             for (int i = 0; i < glDisplayLists.length; i++)
                 glDisplayLists[i] = -1;
         }
+        open = false;
+        if (fontManager != null)
+            fontManager.releaseFonts(this);
     }
 
     @Override
@@ -134,6 +174,7 @@ public class BookGUI extends GuiScreen implements IIndexed {
     @Override
     public void drawScreen(int mx, int my, float frames) {
         super.drawScreen(mx, my, frames);
+        GLDynamicFont.flushAll();
         drawBackground(mx, my, frames);
         try {
             if (pages != null) {
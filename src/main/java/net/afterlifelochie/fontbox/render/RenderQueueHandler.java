@@ -0,0 +1,23 @@
+package net.afterlifelochie.fontbox.render;
+
+import net.afterlifelochie.fontbox.api.FontboxManager;
+import net.afterlifelochie.fontbox.font.GLDynamicFont;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+/**
+ * Runs queued render thread work at the start of every frame: pending font
+ * uploads, within the per-frame time budget, and dynamic font glyphs.
+ *
+ * @author AfterLifeLochie
+ */
+public class RenderQueueHandler {
+    @SubscribeEvent
+    public void onRenderTick(TickEvent.RenderTickEvent event) {
+        if (event.phase != TickEvent.Phase.START)
+            return;
+        FontboxManager.nextFrame();
+        FontboxManager.drainUploads(FontboxManager.UPLOAD_BUDGET_NANOS);
+        GLDynamicFont.flushAll();
+    }
+}
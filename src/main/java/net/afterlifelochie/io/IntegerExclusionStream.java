@@ -1,16 +1,29 @@
 package net.afterlifelochie.io;
 
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Arrays;
 
 /**
- * A stream of integers with certain numbers excluded
+ * A stream of integers with certain numbers excluded. Exclusions are kept as
+ * ranges and only sorted and merged when the stream is read, so excluding a
+ * range costs the same however wide it is.
  */
 public class IntegerExclusionStream {
     private volatile int ptr;
     private final int min;
     private final int max;
-    private Set<Integer> exclusions = new TreeSet<>();
+    /**
+     * The excluded ranges, each packed as the first value in the high half
+     * and the last value in the low half
+     */
+    private long[] exclusions = new long[8];
+    /**
+     * The number of excluded ranges
+     */
+    private int count;
+    /**
+     * If the excluded ranges are sorted and do not touch each other
+     */
+    private boolean merged = true;
 
     public IntegerExclusionStream(int min, int max) {
         this.min = min;
@@ -19,7 +32,7 @@ public class IntegerExclusionStream {
     }
 
     public void exclude(int i) {
-        exclusions.add(i);
+        excludeRange(i, i);
     }
 
     /**
@@ -30,31 +43,81 @@ public class IntegerExclusionStream {
      * @param b right bound
      */
     public void excludeRange(int a, int b) {
-        if (a == b) {
-            exclude(a);
-        } else {
-            for (int n = Math.min(a, b), p = Math.max(a, b); n <= p; n++) {
-                exclude(n);
-            }
+        if (count == exclusions.length)
+            exclusions = Arrays.copyOf(exclusions, count * 2);
+        exclusions[count++] = ((long) Math.min(a, b) << 32) | (Math.max(a, b) & 0xffffffffL);
+        merged = false;
+    }
+
+    private static int first(long range) {
+        return (int) (range >> 32);
+    }
+
+    private static int last(long range) {
+        return (int) range;
+    }
+
+    /**
+     * Sort the excluded ranges and merge the ones which overlap or touch.
+     */
+    private void merge() {
+        if (merged)
+            return;
+        Arrays.sort(exclusions, 0, count);
+        int out = 0;
+        for (int i = 0; i < count; i++) {
+            long range = exclusions[i];
+            if (out > 0 && (long) first(range) <= (long) last(exclusions[out - 1]) + 1) {
+                if (last(range) > last(exclusions[out - 1]))
+                    exclusions[out - 1] = (exclusions[out - 1] & 0xffffffff00000000L) | (last(range) & 0xffffffffL);
+            } else
+                exclusions[out++] = range;
         }
+        count = out;
+        merged = true;
+    }
+
+    /**
+     * Find the excluded range holding an integer.
+     *
+     * @param i The integer
+     * @return The index of the range, or -1 if the integer is not excluded
+     */
+    private int rangeOf(int i) {
+        merge();
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (last(exclusions[mid]) < i)
+                lo = mid + 1;
+            else if (first(exclusions[mid]) > i)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
     }
 
     /**
      * @return the start ptr of the largest gap
      */
     public int largest() {
-        int size = 0, bestStart = 0, bestSize = 0;
-        for (int start = min; start <= max; start++) {
-            if (exclusions.contains(start)) {
-                if (size > bestSize) {
-                    bestStart = start - size;
-                    bestSize = size;
-                }
-                size = 0;
-            } else {
-                size++;
+        merge();
+        int start = min, bestStart = 0, bestSize = 0;
+        for (int i = 0; i < count && start <= max; i++) {
+            int first = first(exclusions[i]), last = last(exclusions[i]);
+            if (last < start)
+                continue;
+            if (first > max)
+                break;
+            int size = Math.max(0, first - start);
+            if (size > bestSize) {
+                bestStart = start;
+                bestSize = size;
             }
+            start = (last >= max) ? max + 1 : last + 1;
         }
+        int size = Math.max(0, max - start + 1);
         if (size > bestSize) {
             bestStart = max - size;
             bestSize = size;
@@ -66,11 +129,8 @@ public class IntegerExclusionStream {
      * @return the next integer in the stream
      */
     public int next() {
-        while (true) {
-            ptr++;
-            if (!exclusions.contains(ptr))
-                break;
-        }
+        int range = rangeOf(ptr + 1);
+        ptr = (range != -1) ? last(exclusions[range]) + 1 : ptr + 1;
         return ptr;
     }
 
@@ -78,11 +138,8 @@ public class IntegerExclusionStream {
      * @return the previous integer in the stream
      */
     public int previous() {
-        while (true) {
-            ptr--;
-            if (!exclusions.contains(ptr))
-                break;
-        }
+        int range = rangeOf(ptr - 1);
+        ptr = (range != -1) ? first(exclusions[range]) - 1 : ptr - 1;
         return ptr;
     }
 
@@ -1,12 +1,12 @@
 package net.afterlifelochie.io;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Stack;
 
 /**
  * StringReader with nested (stack-based) pushback and mark functionality,
- * particularly useful for recursive parsers and readers.
+ * particularly useful for recursive parsers and readers. The reader is a
+ * thread-safe wrapper around a {@link StringCursor}; code which confines a
+ * reader to one thread should use the cursor directly.
  *
  * @author AfterLifeLochie
  */
@@ -16,31 +16,18 @@ public class StackedPushBackStringReader {
      */
     protected final Object lock;
     /**
-     * Map of all Characters in the stream
+     * The cursor over the string, or null once the reader is closed
      */
-    private ArrayList<Character> str;
-    /**
-     * Pushback history stack
-     */
-    private Stack<Integer> pushback;
-    /**
-     * Top of stream pointer
-     */
-    private int next = 0;
+    private StringCursor str;
 
     /**
-     * Create a new StackedPushBackStringReader at the start of the string. The
-     * contents of the string are copied to a local buffer.
+     * Create a new StackedPushBackStringReader at the start of the string.
      *
      * @param s The source string.
      */
     public StackedPushBackStringReader(String s) {
         lock = this;
-        str = new ArrayList<>();
-        pushback = new Stack<>();
-        char[] chars = s.toCharArray();
-        for (char c : chars)
-            str.add(c);
+        str = new StringCursor(s);
     }
 
     /**
@@ -62,9 +49,7 @@ public class StackedPushBackStringReader {
     public char next() throws IOException {
         synchronized (lock) {
             ensureOpen();
-            if (next >= str.size())
-                return (char) 0;
-            return str.get(next++);
+            return str.next();
         }
     }
 
@@ -78,9 +63,9 @@ public class StackedPushBackStringReader {
     public void pushPosition() throws IOException {
         synchronized (lock) {
             ensureOpen();
-            if (pushback.size() > 64)
+            if (str.depth() > 64)
                 throw new IOException("Pusback overflow!");
-            pushback.push(next);
+            str.pushPosition();
         }
     }
 
@@ -94,9 +79,9 @@ public class StackedPushBackStringReader {
     public void popPosition() throws IOException {
         synchronized (lock) {
             ensureOpen();
-            if (pushback.size() == 0)
+            if (str.depth() == 0)
                 throw new IOException("Pushback underflow!");
-            next = pushback.pop();
+            str.popPosition();
         }
     }
 
@@ -110,7 +95,7 @@ public class StackedPushBackStringReader {
     public int getPosition() throws IOException {
         synchronized (lock) {
             ensureOpen();
-            return next;
+            return str.getPosition();
         }
     }
 
@@ -124,7 +109,7 @@ public class StackedPushBackStringReader {
     public void setPosition(int ns) throws IOException {
         synchronized (lock) {
             ensureOpen();
-            next = ns;
+            str.setPosition(ns);
         }
     }
 
@@ -138,7 +123,9 @@ public class StackedPushBackStringReader {
     public void commitPosition() throws IOException {
         synchronized (lock) {
             ensureOpen();
-            pushback.pop();
+            if (str.depth() == 0)
+                throw new IOException("Pushback underflow!");
+            str.commitPosition();
         }
     }
 
@@ -152,11 +139,7 @@ public class StackedPushBackStringReader {
     public void skip(long ns) throws IOException {
         synchronized (lock) {
             ensureOpen();
-            next += ns;
-            if (0 > next)
-                next = 0;
-            if (next > str.size())
-                next = str.size();
+            str.skip(ns);
         }
     }
 
@@ -170,11 +153,7 @@ public class StackedPushBackStringReader {
     public void rewind(long ns) throws IOException {
         synchronized (lock) {
             ensureOpen();
-            next -= ns;
-            if (0 > next)
-                next = 0;
-            if (next > str.size())
-                next = str.size();
+            str.rewind(ns);
         }
     }
 
@@ -202,7 +181,7 @@ public class StackedPushBackStringReader {
     public int available() throws IOException {
         synchronized (lock) {
             ensureOpen();
-            return Math.max(0, str.size() - next);
+            return str.available();
         }
     }
 
@@ -0,0 +1,141 @@
+package net.afterlifelochie.io;
+
+import java.util.Arrays;
+
+/**
+ * Cursor over a character sequence with nested (stack-based) pushback and mark
+ * functionality. The sequence is read in place, not copied, and positions are
+ * kept on a primitive stack. A cursor takes no locks and must be confined to
+ * one thread; see {@link StackedPushBackStringReader} for a thread-safe
+ * reader.
+ *
+ * @author AfterLifeLochie
+ */
+public class StringCursor {
+    /**
+     * The characters of the stream
+     */
+    private final CharSequence str;
+    /**
+     * Pushback history stack
+     */
+    private int[] pushback = new int[8];
+    /**
+     * The number of positions on the pushback stack
+     */
+    private int depth = 0;
+    /**
+     * Top of stream pointer
+     */
+    private int next = 0;
+
+    /**
+     * Create a new StringCursor at the start of a character sequence. The
+     * sequence must not change while the cursor is used.
+     *
+     * @param s The source sequence.
+     */
+    public StringCursor(CharSequence s) {
+        if (s == null)
+            throw new IllegalArgumentException("s may not be null");
+        str = s;
+    }
+
+    /**
+     * Get the next character on the stream, or 0 if no characters are remaining
+     * on the stream.
+     *
+     * @return A character or 0
+     */
+    public char next() {
+        if (next >= str.length())
+            return (char) 0;
+        return str.charAt(next++);
+    }
+
+    /**
+     * Pushes the current position onto the stack.
+     */
+    public void pushPosition() {
+        if (depth == pushback.length)
+            pushback = Arrays.copyOf(pushback, depth * 2);
+        pushback[depth++] = next;
+    }
+
+    /**
+     * Pops the previous position off the stack.
+     *
+     * @throws IllegalStateException If the stack is empty
+     */
+    public void popPosition() {
+        if (depth == 0)
+            throw new IllegalStateException("Pushback underflow!");
+        next = pushback[--depth];
+    }
+
+    /**
+     * Commits the current position of the cursor. This pops the previous return
+     * position without restoring the pointer.
+     *
+     * @throws IllegalStateException If the stack is empty
+     */
+    public void commitPosition() {
+        if (depth == 0)
+            throw new IllegalStateException("Pushback underflow!");
+        depth--;
+    }
+
+    /**
+     * Get the number of positions on the pushback stack.
+     *
+     * @return The depth of the stack
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Returns the current position of the cursor.
+     *
+     * @return The current position of the cursor.
+     */
+    public int getPosition() {
+        return next;
+    }
+
+    /**
+     * Sets the position of the cursor.
+     *
+     * @param ns A new position.
+     */
+    public void setPosition(int ns) {
+        next = ns;
+    }
+
+    /**
+     * Skips forward a number of characters.
+     *
+     * @param ns How far forward to skip.
+     */
+    public void skip(long ns) {
+        next = (int) Math.max(0, Math.min(str.length(), next + ns));
+    }
+
+    /**
+     * Skips backwards a number of characters.
+     *
+     * @param ns How far backwards to skip.
+     */
+    public void rewind(long ns) {
+        next = (int) Math.max(0, Math.min(str.length(), next - ns));
+    }
+
+    /**
+     * Determine the number of characters remaining in the sequence.
+     *
+     * @return The number of characters waiting to be read.
+     */
+    public int available() {
+        return Math.max(0, str.length() - next);
+    }
+}
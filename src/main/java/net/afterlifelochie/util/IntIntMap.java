@@ -0,0 +1,158 @@
+package net.afterlifelochie.util;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing map of primitive int keys to primitive int values. No
+ * boxing is performed on lookup or insert, so the map is suitable for use in
+ * per-character hot paths.
+ *
+ * @author AfterLifeLochie
+ */
+public class IntIntMap {
+    /**
+     * The key table
+     */
+    private int[] keys;
+    /**
+     * The value table
+     */
+    private int[] values;
+    /**
+     * The slot occupancy table
+     */
+    private boolean[] used;
+    /**
+     * The number of entries in the map
+     */
+    private int size;
+    /**
+     * The mask used to wrap a hash into the table
+     */
+    private int mask;
+
+    /**
+     * Create a new empty map with a default capacity.
+     */
+    public IntIntMap() {
+        this(16);
+    }
+
+    /**
+     * Create a new empty map which can hold at least the specified number of
+     * entries before it needs to grow.
+     *
+     * @param expected The expected number of entries
+     */
+    public IntIntMap(int expected) {
+        int capacity = 4;
+        while (capacity < expected * 2)
+            capacity <<= 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slotOf(int key) {
+        int slot = mix(key) & mask;
+        while (used[slot] && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Get the value associated with a key.
+     *
+     * @param key      The key
+     * @param fallback The value to return if the key is not in the map
+     * @return The value associated with the key, or the fallback value
+     */
+    public int get(int key, int fallback) {
+        int slot = slotOf(key);
+        return used[slot] ? values[slot] : fallback;
+    }
+
+    /**
+     * Determine if the map contains a key.
+     *
+     * @param key The key
+     * @return If the key is in the map
+     */
+    public boolean containsKey(int key) {
+        return used[slotOf(key)];
+    }
+
+    /**
+     * Associate a value with a key, replacing any existing value.
+     *
+     * @param key   The key
+     * @param value The value
+     */
+    public void put(int key, int value) {
+        int slot = slotOf(key);
+        if (!used[slot]) {
+            if ((size + 1) * 2 > keys.length) {
+                rehash(keys.length << 1);
+                slot = slotOf(key);
+            }
+            used[slot] = true;
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys, oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (!oldUsed[i])
+                continue;
+            int slot = slotOf(oldKeys[i]);
+            used[slot] = true;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Get the number of entries in the map.
+     *
+     * @return The number of entries in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all entries from the map. The table capacity is retained.
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Get a copy of all the keys in the map, in no particular order.
+     *
+     * @return The keys in the map
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        for (int i = 0, k = 0; i < keys.length; i++)
+            if (used[i])
+                result[k++] = keys[i];
+        return result;
+    }
+}
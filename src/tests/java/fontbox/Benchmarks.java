@@ -0,0 +1,213 @@
+package fontbox;
+
+import java.awt.Font;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.afterlifelochie.fontbox.api.FontboxManager;
+import net.afterlifelochie.fontbox.api.data.FormattedString;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+import net.afterlifelochie.fontbox.api.font.IGLFontBuilder;
+import net.afterlifelochie.fontbox.api.formatting.PageProperties;
+import net.afterlifelochie.fontbox.api.formatting.style.TextFormat;
+import net.afterlifelochie.fontbox.api.tracer.VoidTracer;
+import net.afterlifelochie.fontbox.document.Document;
+import net.afterlifelochie.fontbox.document.Paragraph;
+import net.afterlifelochie.fontbox.font.GLGlyphBaker;
+import net.afterlifelochie.fontbox.font.GLMetricsFont;
+import net.afterlifelochie.fontbox.layout.DocumentProcessor;
+import net.afterlifelochie.fontbox.layout.PageWriter;
+import net.afterlifelochie.io.IntegerExclusionStream;
+
+/**
+ * Timing harness for the baking and layout paths. Not part of the unit
+ * suite; run the main method directly to print the timings. The results of
+ * the parallel paths are checked against the serial paths in
+ * {@link ReliabilityTests}.
+ */
+public class Benchmarks {
+	private static final int WARMUP = 3, RUNS = 10;
+
+	public static void main(String[] args) throws Exception {
+		benchGlyphBake();
+		benchDistanceFieldBake();
+		benchHeadlessPagination();
+		benchLongLines();
+		benchExclusionStream();
+		benchTallPages();
+	}
+
+	private static Font loadFont(String name, float px) throws Exception {
+		try (InputStream stream = Benchmarks.class.getResourceAsStream("/assets/fontbox/fonts/" + name)) {
+			if (stream == null)
+				throw new FileNotFoundException("font resource " + name);
+			return Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(px);
+		}
+	}
+
+	private static List<Font> loadFonts() throws Exception {
+		List<Font> fonts = new ArrayList<>();
+		for (String name : new String[] { "daniel.ttf", "danielbd.ttf", "danielbk.ttf", "notethis.ttf", "ampersand.ttf" })
+			for (float px : new float[] { 16.0f, 22.0f })
+				fonts.add(loadFont(name, px));
+		return fonts;
+	}
+
+	private static void report(String what, long nanos, int runs) {
+		System.out.println(String.format("%s: %.3f ms/op", what, nanos / 1.0e6 / runs));
+	}
+
+	/**
+	 * Compare serial and parallel atlas baking time for a set of fonts.
+	 */
+	private static void benchGlyphBake() throws Exception {
+		List<Font> fonts = loadFonts();
+		for (boolean parallel : new boolean[] { false, true }) {
+			for (int i = 0; i < WARMUP; i++)
+				for (Font font : fonts)
+					new GLGlyphBaker(new VoidTracer(), font).bake(parallel);
+			long start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++)
+				for (Font font : fonts)
+					new GLGlyphBaker(new VoidTracer(), font).bake(parallel);
+			report("bake " + fonts.size() + " fonts, " + (parallel ? "parallel" : "serial"), System.nanoTime() - start, RUNS);
+		}
+	}
+
+	/**
+	 * Compare serial and parallel distance field baking time for one
+	 * typeface.
+	 */
+	private static void benchDistanceFieldBake() throws Exception {
+		Font font = loadFont("daniel.ttf", IGLFontBuilder.SDF_BASE_PX);
+		for (boolean parallel0 : new boolean[] { false, true }) {
+			for (int i = 0; i < WARMUP; i++)
+				new GLGlyphBaker(new VoidTracer(), font, IGLFontBuilder.SDF_SPREAD).bake(parallel0);
+			long start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++)
+				new GLGlyphBaker(new VoidTracer(), font, IGLFontBuilder.SDF_SPREAD).bake(parallel0);
+			report("distance field bake, " + (parallel0 ? "parallel" : "serial"), System.nanoTime() - start, RUNS);
+		}
+	}
+
+	/**
+	 * Compare the time to measure a font with the time to bake it, then time
+	 * paginating a document with the metrics-only font, without any GL.
+	 */
+	private static void benchHeadlessPagination() throws Exception {
+		Font font = loadFont("daniel.ttf", 16.0f);
+		for (int i = 0; i < WARMUP; i++)
+			new GLGlyphBaker(new VoidTracer(), font).measure(true);
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++)
+			new GLGlyphBaker(new VoidTracer(), font).measure(true);
+		report("measure only", System.nanoTime() - start, RUNS);
+		start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++)
+			new GLGlyphBaker(new VoidTracer(), font).bake(true);
+		report("full bake", System.nanoTime() - start, RUNS);
+
+		FontboxManager manager = new FontboxManager();
+		IGLFont metrics = GLMetricsFont.fromFont(manager, font, null);
+		PageProperties properties = new PageProperties(400, 450, new TextFormat(metrics));
+		properties.bothMargin(2).lineHeightSize(30).spaceSize(4).densitiy(0.66f);
+		int pages = 0;
+		for (int i = 0; i < WARMUP; i++)
+			pages = paginate(manager, properties);
+		start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++)
+			paginate(manager, properties);
+		report("headless pagination, " + pages + " pages", System.nanoTime() - start, RUNS);
+	}
+
+	private static int paginate(FontboxManager manager, PageProperties properties) throws Exception {
+		Document doc = new Document();
+		for (int i = 0; i < 200; i++)
+			doc.push(new Paragraph(new FormattedString("The quick brown fox jumps over the lazy dog; pack my box "
+					+ "with five dozen liquor jugs, and sphinx of black quartz, judge my vow.")));
+		PageWriter writer = new PageWriter(properties, manager);
+		DocumentProcessor.generatePages(new VoidTracer(), doc, writer);
+		writer.close();
+		return writer.pages().size();
+	}
+
+	/**
+	 * Time laying out long justified paragraphs on wide pages, where every
+	 * line holds many words.
+	 */
+	private static void benchLongLines() throws Exception {
+		FontboxManager manager = new FontboxManager();
+		IGLFont metrics = GLMetricsFont.fromFont(manager, loadFont("daniel.ttf", 16.0f), null);
+		PageProperties properties = new PageProperties(4000, 4000, new TextFormat(metrics));
+		properties.bothMargin(2).lineHeightSize(30).spaceSize(4).densitiy(0.66f);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 400; i++)
+			text.append(i % 7 == 0 ? "extraordinarily " : "jumps over the ");
+		Document doc = new Document();
+		for (int i = 0; i < 10; i++)
+			doc.push(new Paragraph(new FormattedString(text.toString())));
+		long start = 0;
+		for (int i = 0; i < WARMUP + RUNS; i++) {
+			if (i == WARMUP)
+				start = System.nanoTime();
+			PageWriter writer = new PageWriter(properties, manager);
+			DocumentProcessor.generatePages(new VoidTracer(), doc, writer);
+			writer.close();
+		}
+		report("long justified lines", System.nanoTime() - start, RUNS);
+	}
+
+	/**
+	 * Time the exclusion windows PageWriter builds for each line written to a
+	 * page crowded with floating elements.
+	 */
+	private static void benchExclusionStream() {
+		Random random = new Random(22);
+		int[][] floats = new int[40][];
+		for (int i = 0; i < floats.length; i++) {
+			int x = random.nextInt(400), width = 10 + random.nextInt(60);
+			floats[i] = new int[] { x, Math.min(400, x + width) };
+		}
+		long start = 0, sum = 0;
+		for (int i = 0; i < WARMUP + RUNS; i++) {
+			if (i == WARMUP)
+				start = System.nanoTime();
+			for (int line = 0; line < 200; line++) {
+				IntegerExclusionStream window = new IntegerExclusionStream(0, 400);
+				for (int j = 0; j <= line % floats.length; j++)
+					window.excludeRange(floats[j][0], floats[j][1]);
+				sum += window.largest();
+			}
+		}
+		report("exclusion windows, 200 lines, " + sum + " wide", System.nanoTime() - start, RUNS);
+	}
+
+	/**
+	 * Time paginating onto tall pages, where each page holds hundreds of
+	 * lines.
+	 */
+	private static void benchTallPages() throws Exception {
+		FontboxManager manager = new FontboxManager();
+		IGLFont metrics = GLMetricsFont.fromFont(manager, loadFont("daniel.ttf", 16.0f), null);
+		PageProperties properties = new PageProperties(400, 30000, new TextFormat(metrics));
+		properties.bothMargin(2).lineHeightSize(30).spaceSize(4).densitiy(0.66f);
+		Document doc = new Document();
+		for (int i = 0; i < 1000; i++)
+			doc.push(new Paragraph(new FormattedString("The quick brown fox jumps over the lazy dog; pack my box "
+					+ "with five dozen liquor jugs, and sphinx of black quartz, judge my vow.")));
+		long start = 0;
+		int pages = 0;
+		for (int i = 0; i < WARMUP + RUNS; i++) {
+			if (i == WARMUP)
+				start = System.nanoTime();
+			PageWriter writer = new PageWriter(properties, manager);
+			DocumentProcessor.generatePages(new VoidTracer(), doc, writer);
+			writer.close();
+			pages = writer.pages().size();
+		}
+		report("tall pages, " + pages + " pages", System.nanoTime() - start, RUNS);
+	}
+}
@@ -2,15 +2,78 @@ package fontbox;
 
 import static org.junit.Assert.*;
 
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import net.afterlifelochie.fontbox.api.FontboxManager;
+import net.afterlifelochie.fontbox.api.data.FormattedString;
+import net.afterlifelochie.fontbox.api.exception.FontException;
+import net.afterlifelochie.fontbox.api.font.FontCoverage;
+import net.afterlifelochie.fontbox.api.font.IGLFont;
+import net.afterlifelochie.fontbox.api.font.IGLFontBuilder;
+import net.afterlifelochie.fontbox.api.font.IGLFontMetrics;
 import net.afterlifelochie.fontbox.document.CompilerHintElement;
+import net.afterlifelochie.fontbox.document.Document;
+import net.afterlifelochie.fontbox.document.DocumentWrapper;
+import net.afterlifelochie.fontbox.document.Heading;
+import net.afterlifelochie.fontbox.document.Image;
+import net.afterlifelochie.fontbox.document.Paragraph;
+import net.afterlifelochie.fontbox.layout.DocumentProcessor;
+import net.afterlifelochie.fontbox.layout.PageSkyline;
+import net.afterlifelochie.fontbox.layout.PageWriter;
+import net.afterlifelochie.fontbox.layout.components.Line;
+import net.afterlifelochie.fontbox.layout.components.LineWriter;
+import net.afterlifelochie.fontbox.api.formatting.layout.AlignmentMode;
 import net.afterlifelochie.fontbox.api.formatting.layout.CompilerHint;
 import net.afterlifelochie.fontbox.api.formatting.layout.FloatMode;
+import net.afterlifelochie.fontbox.api.layout.IElement;
+import net.afterlifelochie.fontbox.api.layout.IPage;
 import net.afterlifelochie.fontbox.api.layout.ObjectBounds;
 import net.afterlifelochie.fontbox.layout.components.Page;
 import net.afterlifelochie.fontbox.api.formatting.PageProperties;
+import net.afterlifelochie.fontbox.api.formatting.style.ColorFormat;
+import net.afterlifelochie.fontbox.api.formatting.style.DecorationStyle;
+import net.afterlifelochie.fontbox.api.formatting.style.TextFormat;
+import net.afterlifelochie.fontbox.api.formatting.style.TextFormatter;
+import net.afterlifelochie.fontbox.api.tracer.VoidTracer;
+import net.afterlifelochie.fontbox.font.GLCompositeFont;
+import net.afterlifelochie.fontbox.font.GLDistanceField;
+import net.afterlifelochie.fontbox.font.GLFont;
+import net.afterlifelochie.fontbox.font.GLFontAtlasCache;
+import net.afterlifelochie.fontbox.font.GLFontMetrics;
+import net.afterlifelochie.fontbox.font.GLFontMetricsConverter;
+import net.afterlifelochie.fontbox.font.GLGlyphBaker;
+import net.afterlifelochie.fontbox.font.GLGlyphTable;
+import net.afterlifelochie.fontbox.font.GLMetricsFont;
+import net.afterlifelochie.fontbox.font.GLSkylinePacker;
+import net.afterlifelochie.fontbox.font.GLTypefaceCache;
+import net.afterlifelochie.fontbox.font.GLWordCache;
 import net.afterlifelochie.io.IntegerExclusionStream;
+import net.afterlifelochie.io.StackedPushBackStringReader;
+import net.afterlifelochie.io.StringCursor;
+import net.minecraft.util.ResourceLocation;
+import org.lwjgl.opengl.GL11;
 
 import org.junit.Test;
 
@@ -108,4 +171,1142 @@ public class ReliabilityTests {
 			fail("Unexpected exception: " + t);
 		}
 	}
+
+	/**
+	 * Test to check that the glyph table stores dense and sparse glyphs.
+	 */
+	@Test
+	public void testGlyphTable() {
+		GLGlyphTable table = new GLGlyphTable();
+		table.put('a', 10, 20, 15, 1, 2);
+		assertEquals("dense glyph is stored", 'a', table.indexOf('a'));
+		assertEquals("missing glyph has no row", -1, table.indexOf('b'));
+		for (int cp = 0x400; cp < 0x500; cp++)
+			table.put(cp, cp, 1, 1, 0, 0);
+		assertEquals("sparse glyph count", 257, table.size());
+		for (int cp = 0x400; cp < 0x500; cp++)
+			assertEquals("sparse glyph is stored", cp, table.width(table.indexOf(cp)));
+		table.put('a', 11, 20, 15, 1, 2);
+		assertEquals("glyph is replaced", 11, table.width(table.indexOf('a')));
+		assertEquals("replace does not grow", 257, table.size());
+	}
+	/**
+	 * Test to check that the skyline packer never overlaps rectangles or
+	 * leaves the packing area.
+	 */
+	@Test
+	public void testSkylinePacker() {
+		GLSkylinePacker packer = new GLSkylinePacker(64, 64);
+		List<int[]> placed = new ArrayList<>();
+		int[] out = new int[2];
+		for (int i = 0; i < 40; i++) {
+			int w = 3 + (i * 7) % 11, h = 4 + (i * 5) % 9;
+			if (!packer.pack(w, h, out))
+				continue;
+			assertTrue("rectangle inside area", out[0] >= 0 && out[1] >= 0 && out[0] + w <= 64 && out[1] + h <= 64);
+			for (int[] r : placed)
+				assertFalse("rectangles overlap", out[0] < r[0] + r[2] && r[0] < out[0] + w && out[1] < r[1] + r[3]
+						&& r[1] < out[1] + h);
+			placed.add(new int[] { out[0], out[1], w, h });
+		}
+		assertTrue("most rectangles placed", placed.size() > 30);
+		assertFalse("oversized rectangle rejected", packer.pack(65, 1, out));
+	}
+
+	/**
+	 * Test to check that single-colour images are read as coverage rasters and
+	 * that coloured images fall back to RGBA.
+	 */
+	@Test
+	public void testAlphaRaster() {
+		BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, 0x80FFFFFF);
+		image.setRGB(2, 1, 0xFFFFFFFF);
+		assertTrue("white glyphs are coverage", GLFont.isCoverage(image, 3, 2));
+		assertArrayEquals("alpha raster", new byte[] { (byte) 0x80, 0, 0, 0, 0, (byte) 0xFF },
+				GLFont.toAlphaRaster(image, 3, 2));
+		byte[] rgba = GLFont.toRaster(image, 3, 2);
+		assertEquals("rgba raster size", 24, rgba.length);
+		assertEquals("rgba alpha", (byte) 0x80, rgba[3]);
+		image.setRGB(1, 0, 0xFFFF0000);
+		assertFalse("coloured glyphs are not coverage", GLFont.isCoverage(image, 3, 2));
+	}
+
+	/**
+	 * Test to check that XML sprite font metrics survive conversion to the
+	 * binary metrics format.
+	 */
+	@Test
+	public void testMetricsFormats() throws Exception {
+		GLFontMetrics xml;
+		ByteArrayOutputStream fbm = new ByteArrayOutputStream();
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/daniel.metrics.xml")) {
+			xml = GLFontMetrics.fromXML(new VoidTracer(), stream, 418, 242);
+		}
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/daniel.metrics.xml")) {
+			GLFontMetricsConverter.convert(new VoidTracer(), stream, fbm, 0, 0);
+		}
+		GLFontMetrics binary = GLFontMetrics.fromFBM(new VoidTracer(), new ByteArrayInputStream(fbm.toByteArray()),
+				418, 242);
+		GLGlyphTable a = xml.getGlyphTable(), b = binary.getGlyphTable();
+		assertTrue("glyphs read", a.size() > 90);
+		assertArrayEquals("same glyphs", a.codePoints(), b.codePoints());
+		for (int cp : a.codePoints()) {
+			assertEquals("width of " + cp, a.width(a.indexOf(cp)), b.width(b.indexOf(cp)));
+			assertEquals("height of " + cp, a.height(a.indexOf(cp)), b.height(b.indexOf(cp)));
+			assertEquals("u of " + cp, a.u(a.indexOf(cp)), b.u(b.indexOf(cp)));
+			assertEquals("v of " + cp, a.v(a.indexOf(cp)), b.v(b.indexOf(cp)));
+		}
+		assertEquals("image size", 418, (int) binary.getFontImageWidth());
+
+		int[] glyphs = new int[2 * 10000];
+		for (int i = 0; i < 10000; i++) {
+			glyphs[2 * i] = 0x100 + i;
+			glyphs[2 * i + 1] = i % 50;
+		}
+		GLFontMetrics large = testMetrics(glyphs);
+		for (int i = 0; i < 5000; i++)
+			large.putKerning((char) (0x100 + i), 'a', i % 7 - 3);
+		ByteArrayOutputStream largeFbm = new ByteArrayOutputStream();
+		large.writeFBM(new DataOutputStream(largeFbm));
+		GLFontMetrics blocks = GLFontMetrics.fromFBM(new VoidTracer(),
+				new ByteArrayInputStream(largeFbm.toByteArray()), 0, 0);
+		assertArrayEquals("glyphs across blocks", large.getGlyphTable().codePoints(),
+				blocks.getGlyphTable().codePoints());
+		for (int i = 0; i < 10000; i++)
+			assertEquals("width across blocks", i % 50, blocks.widthOf((char) (0x100 + i)));
+		assertEquals("pairs across blocks", 5000, blocks.kerningPairs());
+		assertEquals("pair across blocks", 4999 % 7 - 3, blocks.kerningOf((char) (0x100 + 4999), 'a'));
+		try {
+			GLFontMetrics.fromFBM(new VoidTracer(),
+					new ByteArrayInputStream(Arrays.copyOf(largeFbm.toByteArray(), largeFbm.size() / 2)), 0, 0);
+			fail("truncated file read");
+		} catch (FontException e) {
+			/* Expected */
+		}
+	}
+
+	/**
+	 * Test to check that the upload queue respects its time budget and
+	 * completes futures with the result of each task.
+	 */
+	@Test
+	public void testUploadQueue() throws Exception {
+		FontboxManager.drainUploads(Long.MAX_VALUE);
+		CompletableFuture<Integer> a = FontboxManager.queueUpload(() -> 1);
+		CompletableFuture<Integer> b = FontboxManager.queueUpload(() -> 2);
+		CompletableFuture<Integer> c = FontboxManager.queueUpload(() -> {
+			throw new IllegalStateException("upload failed");
+		});
+		assertEquals("zero budget runs one task", 1, FontboxManager.drainUploads(0));
+		assertTrue("first task done", a.isDone());
+		assertFalse("second task waiting", b.isDone());
+		assertEquals("rest of queue drained", 2, FontboxManager.drainUploads(Long.MAX_VALUE));
+		assertEquals("result delivered", Integer.valueOf(2), b.get());
+		assertTrue("failure delivered", c.isCompletedExceptionally());
+		assertFalse("queue empty", FontboxManager.hasPendingUploads());
+		CompletableFuture<Integer> d = CompletableFuture.supplyAsync(() -> 4)
+				.thenCompose(four -> FontboxManager.queueUpload(() -> four + 1));
+		assertEquals("awaited without a render loop", Integer.valueOf(5), FontboxManager.awaitUploads(d));
+	}
+
+	/**
+	 * A font with a fake texture, for testing texture accounting.
+	 */
+	private static class TestFont implements IGLFont {
+		private final FontboxManager manager;
+		private final String name;
+		private final int handle;
+		private IGLFontMetrics metric;
+		private boolean resident = true;
+
+		TestFont(FontboxManager manager, String name) {
+			this(manager, name, null);
+		}
+
+		TestFont(FontboxManager manager, String name, IGLFontMetrics metric) {
+			this.manager = manager;
+			this.name = name;
+			this.metric = metric;
+			handle = manager.allocateFont(this);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getHandle() {
+			return handle;
+		}
+
+		public int getTextureId() {
+			boolean restored = !resident;
+			resident = true;
+			manager.markUsed(this, restored);
+			return 1;
+		}
+
+		public float getScale() {
+			return 1.0f;
+		}
+
+		public IGLFontMetrics getMetric() {
+			return metric;
+		}
+
+		public long getTextureBytes() {
+			return resident ? 100 : 0;
+		}
+
+		public boolean evict() {
+			resident = false;
+			return true;
+		}
+
+		public void delete(FontboxManager manager) {
+			manager.deleteFont(this);
+			metric = null;
+		}
+	}
+
+	/**
+	 * Test to check that the font registry evicts least recently used,
+	 * unreferenced fonts past the texture budget and counts uses.
+	 */
+	@Test
+	public void testFontBudget() {
+		FontboxManager manager = new FontboxManager();
+		manager.setTextureBudget(300);
+		TestFont a = new TestFont(manager, "a"), b = new TestFont(manager, "b");
+		Object holder = new Object();
+		manager.retainFonts(holder, Collections.singletonList(a));
+		a.getTextureId();
+		b.getTextureId();
+		TestFont c = new TestFont(manager, "c");
+		assertEquals("nothing evicted yet", 0, manager.getFontEvictions());
+		TestFont d = new TestFont(manager, "d");
+		assertEquals("eviction waits for the render thread", 0, manager.getFontEvictions());
+		assertEquals("marked font still resident", 100, b.getTextureBytes());
+		FontboxManager.drainUploads(Long.MAX_VALUE);
+		assertEquals("one eviction", 1, manager.getFontEvictions());
+		assertEquals("referenced font kept", 100, a.getTextureBytes());
+		assertEquals("least recently used unreferenced font evicted", 0, b.getTextureBytes());
+		assertEquals("recent font kept", 100, c.getTextureBytes());
+		b.getTextureId();
+		assertEquals("restore counted as miss", 1, manager.getFontMisses());
+		assertEquals("uses counted as hits", 2, manager.getFontHits());
+		assertEquals("restore evicts the next least recently used font", 0, c.getTextureBytes());
+		assertEquals("budget kept", 300, manager.getResidentTextureBytes());
+		manager.releaseFonts(holder);
+		manager.setTextureBudget(100);
+		FontboxManager.drainUploads(Long.MAX_VALUE);
+		assertEquals("released font evictable", 0, a.getTextureBytes());
+
+		FontboxManager.nextFrame();
+		d.getTextureId();
+		long hits = manager.getFontHits();
+		d.getTextureId();
+		d.getTextureId();
+		assertEquals("binds in one frame counted as one use", hits, manager.getFontHits());
+		FontboxManager.nextFrame();
+		d.getTextureId();
+		assertEquals("next frame counted again", hits + 1, manager.getFontHits());
+	}
+
+	/**
+	 * Test to check that fonts registered from several threads get distinct
+	 * handles, and that lookups running at the same time only ever see fully
+	 * registered fonts.
+	 */
+	@Test
+	public void testConcurrentRegistry() throws Exception {
+		final FontboxManager manager = new FontboxManager();
+		final int writers = 4, perWriter = 200;
+		final TestFont[][] fonts = new TestFont[writers][perWriter];
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicBoolean done = new AtomicBoolean(), torn = new AtomicBoolean();
+		List<Thread> threads = new ArrayList<>();
+		for (int w = 0; w < writers; w++) {
+			final int writer = w;
+			threads.add(new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < perWriter; i++)
+					fonts[writer][i] = new TestFont(manager, "font" + writer + "." + i);
+			}));
+		}
+		Thread reader = new Thread(() -> {
+			while (!done.get())
+				for (int handle = 0; handle < writers * perWriter; handle++) {
+					IGLFont font = manager.fromHandle(handle);
+					if (font != null && (font.getName() == null || manager.fromName(font.getName()) != font))
+						torn.set(true);
+				}
+		});
+		reader.start();
+		for (Thread thread : threads)
+			thread.start();
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		done.set(true);
+		reader.join();
+
+		assertFalse("lookups saw a partly registered font", torn.get());
+		boolean[] seen = new boolean[writers * perWriter];
+		for (TestFont[] row : fonts)
+			for (TestFont font : row) {
+				assertFalse("handle unique", seen[font.getHandle()]);
+				seen[font.getHandle()] = true;
+				assertSame("lookup by handle", font, manager.fromHandle(font.getHandle()));
+				assertSame("lookup by name", font, manager.fromName(font.getName()));
+			}
+
+		TestFont first = fonts[0][0];
+		assertEquals("formats of one font are equal", new TextFormat(first), new TextFormat(first));
+		assertEquals("equal formats hash alike", new TextFormat(first).hashCode(), new TextFormat(first).hashCode());
+		assertNotEquals("formats of different fonts differ", new TextFormat(first), new TextFormat(fonts[0][1]));
+		TestFont mine = new TestFont(new FontboxManager(), "mine"), theirs = new TestFont(new FontboxManager(), "theirs");
+		assertEquals("managers hand out the same handles", mine.getHandle(), theirs.getHandle());
+		assertNotEquals("formats of other managers' fonts differ", new TextFormat(mine), new TextFormat(theirs));
+		TestFont replacement = new TestFont(manager, first.getName());
+		assertNull("replaced handle invalid", manager.fromHandle(first.getHandle()));
+		assertSame("name follows replacement", replacement, manager.fromName(first.getName()));
+		replacement.delete(manager);
+		assertNull("deleted font gone", manager.fromName(first.getName()));
+		assertEquals("deleted font has no handle", FontboxManager.NO_HANDLE, manager.handleOf(replacement));
+		TestFont reused = new TestFont(manager, "reused");
+		assertEquals("deleted handle handed out again", replacement.getHandle(), reused.getHandle());
+		for (int i = 0; i < 70000; i++)
+			new TestFont(manager, "reloaded");
+		assertNotNull("re-registering never exhausts handles", manager.fromName("reloaded"));
+
+		FontboxManager shared = new FontboxManager();
+		threads.clear();
+		for (int w = 0; w < writers; w++)
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < perWriter; i++)
+					new TestFont(shared, "shared");
+			}));
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		IGLFont winner = shared.fromName("shared");
+		assertSame("one font holds the name", winner, shared.fromHandle(winner.getHandle()));
+		for (int handle = 0; handle < writers * perWriter; handle++)
+			if (handle != winner.getHandle())
+				assertNull("replaced handle " + handle + " released", shared.fromHandle(handle));
+	}
+
+	/**
+	 * Test to check the distance field transform against a brute force
+	 * reference, on a disc and on random noise.
+	 */
+	@Test
+	public void testDistanceField() {
+		final int w = 37, h = 29, spread = 4;
+		Random random = new Random(11);
+		byte[] disc = new byte[w * h], noise = new byte[w * h];
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++) {
+				int dx = x - 18, dy = y - 14;
+				disc[y * w + x] = (byte) ((dx * dx + dy * dy <= 81) ? 255 : 0);
+				noise[y * w + x] = (byte) random.nextInt(256);
+			}
+		GLDistanceField field = new GLDistanceField(w, h);
+		byte[] out = new byte[w * h];
+		for (byte[] coverage : new byte[][] { disc, noise }) {
+			field.transform(coverage, w, h, spread, out);
+			for (int y = 0; y < h; y++)
+				for (int x = 0; x < w; x++) {
+					boolean in = (coverage[y * w + x] & 0xff) >= 128;
+					int best = Integer.MAX_VALUE;
+					for (int y1 = 0; y1 < h; y1++)
+						for (int x1 = 0; x1 < w; x1++)
+							if (((coverage[y1 * w + x1] & 0xff) >= 128) != in)
+								best = Math.min(best, (x1 - x) * (x1 - x) + (y1 - y) * (y1 - y));
+					int expected = in ? GLDistanceField.encode(best, 0, spread) : GLDistanceField.encode(0, best, spread);
+					assertEquals("field at " + x + ", " + y, expected, out[y * w + x] & 0xff);
+				}
+		}
+		field.transform(disc, w, h, spread, out);
+		assertEquals("centre saturated", 255, out[14 * w + 18] & 0xff);
+		assertEquals("far outside empty", 0, out[0] & 0xff);
+		assertEquals("inside edge just above half", 143, out[14 * w + 27] & 0xff);
+		assertEquals("outside edge just below half", 112, out[14 * w + 28] & 0xff);
+	}
+
+	/**
+	 * Test to check that serial and parallel baking produce the same atlas
+	 * and metrics, for plain and distance field bakes.
+	 */
+	@Test
+	public void testParallelBake() throws Exception {
+		for (String name : new String[] { "daniel.ttf", "danielbd.ttf", "danielbk.ttf", "notethis.ttf", "ampersand.ttf" })
+			for (float px : new float[] { 16.0f, 22.0f }) {
+				Font font;
+				try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/" + name)) {
+					font = Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(px);
+				}
+				GLGlyphBaker.Result serial = new GLGlyphBaker(new VoidTracer(), font).bake(false);
+				GLGlyphBaker.Result parallel = new GLGlyphBaker(new VoidTracer(), font).bake(true);
+				int w = serial.image.getWidth(), h = serial.image.getHeight();
+				assertArrayEquals("atlas of " + font, serial.image.getRGB(0, 0, w, h, null, 0, w),
+						parallel.image.getRGB(0, 0, w, h, null, 0, w));
+				GLGlyphTable a = serial.metric.getGlyphTable(), b = parallel.metric.getGlyphTable();
+				assertArrayEquals("glyphs of " + font, a.codePoints(), b.codePoints());
+				for (int cp : a.codePoints()) {
+					int ra = a.indexOf(cp), rb = b.indexOf(cp);
+					assertEquals(a.width(ra), b.width(rb));
+					assertEquals(a.height(ra), b.height(rb));
+					assertEquals(a.ascent(ra), b.ascent(rb));
+					assertEquals(a.u(ra), b.u(rb));
+					assertEquals(a.v(ra), b.v(rb));
+				}
+			}
+
+		Font font;
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/daniel.ttf")) {
+			font = Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(IGLFontBuilder.SDF_BASE_PX);
+		}
+		GLGlyphBaker.Result serial = new GLGlyphBaker(new VoidTracer(), font, IGLFontBuilder.SDF_SPREAD).bake(false);
+		GLGlyphBaker.Result parallel = new GLGlyphBaker(new VoidTracer(), font, IGLFontBuilder.SDF_SPREAD).bake(true);
+		int w = serial.image.getWidth(), h = serial.image.getHeight();
+		assertArrayEquals("distance field atlas", serial.image.getRGB(0, 0, w, h, null, 0, w),
+				parallel.image.getRGB(0, 0, w, h, null, 0, w));
+	}
+
+	/**
+	 * Test to check that kerning pairs are extracted at bake time, survive
+	 * the binary metric form, can be disabled, and that version 1 binary
+	 * metric files without kerning still load.
+	 */
+	@Test
+	public void testKerning() throws Exception {
+		Font font;
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/notethis.ttf")) {
+			font = Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(22.0f);
+		}
+		GLFontMetrics metric = new GLGlyphBaker(new VoidTracer(), font).bake(true).metric;
+		assertTrue("pairs extracted", metric.kerningPairs() > 0);
+		int found = 0;
+		for (char left = IGLFont.MIN_CH; left < IGLFont.MAX_CH; left++)
+			for (char right = IGLFont.MIN_CH; right < IGLFont.MAX_CH; right++)
+				if (metric.kerningOf(left, right) != 0)
+					found++;
+		assertEquals("every pair found by lookup", metric.kerningPairs(), found);
+		assertEquals("blank glyphs not kerned", 0, metric.kerningOf(' ', 'A'));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		metric.writeBinary(new DataOutputStream(bytes));
+		GLFontMetrics copy = GLFontMetrics.fromBinary(new VoidTracer(),
+				new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals("pairs kept", metric.kerningPairs(), copy.kerningPairs());
+		for (char left = IGLFont.MIN_CH; left < IGLFont.MAX_CH; left++)
+			for (char right = IGLFont.MIN_CH; right < IGLFont.MAX_CH; right++)
+				assertEquals("pair " + left + right, metric.kerningOf(left, right), copy.kerningOf(left, right));
+		copy.setKerningEnabled(false);
+		for (char left = IGLFont.MIN_CH; left < IGLFont.MAX_CH; left++)
+			for (char right = IGLFont.MIN_CH; right < IGLFont.MAX_CH; right++)
+				assertEquals("disabled", 0, copy.kerningOf(left, right));
+
+		GLFontMetrics plain;
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/daniel.metrics.xml")) {
+			plain = GLFontMetrics.fromXML(new VoidTracer(), stream, 418, 242);
+		}
+		ByteArrayOutputStream fbm = new ByteArrayOutputStream();
+		plain.writeFBM(new DataOutputStream(fbm));
+		byte[] old = Arrays.copyOf(fbm.toByteArray(), fbm.size() - 4);
+		old[7] = 1;
+		GLFontMetrics legacy = GLFontMetrics.fromFBM(new VoidTracer(), new ByteArrayInputStream(old), 0, 0);
+		assertArrayEquals("version 1 glyphs", plain.getGlyphTable().codePoints(), legacy.getGlyphTable().codePoints());
+		assertEquals("version 1 has no kerning", 0, legacy.kerningPairs());
+	}
+
+	/**
+	 * Build glyph metrics from code point and width pairs.
+	 */
+	private static GLFontMetrics testMetrics(int... glyphs) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(64);
+		out.writeInt(64);
+		out.writeInt(glyphs.length / 2);
+		for (int i = 0; i < glyphs.length; i += 2) {
+			out.writeInt(glyphs[i]);
+			out.writeInt(glyphs[i + 1]);
+			out.writeInt(10);
+			out.writeInt(8);
+			out.writeInt(i * 4);
+			out.writeInt(8);
+		}
+		out.writeInt(0);
+		return GLFontMetrics.fromBinary(new VoidTracer(), new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	/**
+	 * Test to check that a composite font resolves each character to the first
+	 * font in its chain with a glyph for it, and measures with that font.
+	 */
+	@Test
+	public void testCompositeFont() throws Exception {
+		FontboxManager manager = new FontboxManager();
+		TestFont latin = new TestFont(manager, "latin", testMetrics('a', 5, 'b', 6));
+		TestFont wide = new TestFont(manager, "wide", testMetrics('b', 9, 'c', 7, 0x4e00, 12));
+		IGLFont composite = GLCompositeFont.fromFonts(manager, "composite", latin, wide);
+		IGLFontMetrics metric = composite.getMetric();
+
+		assertSame("own glyph", latin, composite.resolve('a'));
+		assertSame("first font wins", latin, composite.resolve('b'));
+		assertEquals("measured by first font", 6, metric.widthOf('b'));
+		assertSame("fallback glyph", wide, composite.resolve('c'));
+		assertEquals("measured by fallback", 7, metric.widthOf('c'));
+		assertSame("fallback outside dense range", wide, composite.resolve('\u4e00'));
+		assertEquals("resolved to handle", wide.getHandle(), ((GLCompositeFont) composite).handleOf('\u4e00'));
+		assertTrue("glyph from any font", metric.hasGlyph('c'));
+		assertFalse("glyph from no font", metric.hasGlyph('z'));
+		assertEquals("missing glyph has no font", IGLFont.NO_HANDLE, ((GLCompositeFont) composite).handleOf('z'));
+		assertEquals("no kerning across fonts", 0, metric.kerningOf('a', 'c'));
+		assertTrue("faces retained", composite.getFaces().containsAll(Arrays.asList(latin, wide)));
+		assertSame("registered", composite, manager.fromName("composite"));
+		GLWordCache words = manager.wordCache();
+		words.put(composite.getHandle(), EnumSet.noneOf(DecorationStyle.class), false, "cab", 18, words.generation());
+		wide.delete(manager);
+		assertEquals("composite words dropped with a face", GLWordCache.MISSING,
+				words.get(composite.getHandle(), EnumSet.noneOf(DecorationStyle.class), false, "cab"));
+		assertNull("deleted fallback skipped", composite.resolve('c'));
+		assertFalse("deleted fallback has no glyph", metric.hasGlyph('c'));
+		assertSame("live fonts still resolve", latin, composite.resolve('b'));
+		assertNull("unseen wide glyph after delete", composite.resolve('\u4e01'));
+		assertFalse("unseen wide glyph has no glyph", metric.hasGlyph('\u4e02'));
+		assertEquals("unseen wide glyph has no width", 0, metric.widthOf('\u4e03'));
+		assertEquals("glyphs of live fonts", 2, metric.getGlyphs().size());
+		latin.delete(manager);
+		assertEquals("no live fonts", 0, metric.widthOf('a'));
+		assertTrue("no live fonts image", metric.getFontImageWidth() > 0);
+
+		try {
+			GLCompositeFont.fromFonts(manager, "broken", latin, new TestFont(new FontboxManager(), "foreign"));
+			fail("font from another manager accepted");
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	/**
+	 * Test to check that a metrics-only font measures exactly like a baked
+	 * font, and that text can be paginated with it without a texture.
+	 */
+	@Test
+	public void testMetricsFont() throws Exception {
+		Font font;
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/daniel.ttf")) {
+			font = Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(16.0f);
+		}
+		ByteArrayOutputStream baked = new ByteArrayOutputStream(), measured = new ByteArrayOutputStream();
+		new GLGlyphBaker(new VoidTracer(), font).bake(true).metric.writeBinary(new DataOutputStream(baked));
+		new GLGlyphBaker(new VoidTracer(), font).measure(true).writeBinary(new DataOutputStream(measured));
+		assertArrayEquals("same metrics as a bake", baked.toByteArray(), measured.toByteArray());
+
+		FontboxManager manager = new FontboxManager();
+		GLMetricsFont metrics = (GLMetricsFont) GLMetricsFont.fromFont(manager, font, null);
+		assertSame("registered", metrics, manager.fromName(font.getFontName()));
+		assertNull("nothing to upload", metrics.upload());
+		assertEquals("no texture", -1, metrics.getTextureId());
+		assertEquals("no texture memory", 0, metrics.getTextureBytes());
+
+		Document doc = new Document();
+		for (int i = 0; i < 20; i++)
+			doc.push(new Paragraph(new FormattedString("The quick brown fox jumps over the lazy dog, again and again.")));
+		PageProperties properties = new PageProperties(200, 150, new TextFormat(metrics));
+		properties.bothMargin(2).lineHeightSize(30).spaceSize(4).densitiy(0.66f);
+		PageWriter writer = new PageWriter(properties, manager);
+		DocumentProcessor.generatePages(new VoidTracer(), doc, writer);
+		writer.close();
+		assertTrue("paginated headless", writer.pages().size() > 1);
+		assertFalse("still not uploaded", metrics.isUploaded());
+	}
+
+	/**
+	 * Test to check that every size of a typeface is derived from one read
+	 * and one parse of its file.
+	 */
+	@Test
+	public void testTypefaceCache() throws Exception {
+		AtomicInteger reads = new AtomicInteger();
+		GLTypefaceCache cache = new GLTypefaceCache(location -> {
+			reads.incrementAndGet();
+			try (InputStream stream = getClass().getResourceAsStream(
+					"/assets/" + location.getResourceDomain() + "/" + location.getResourcePath())) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buf = new byte[8192];
+				int len;
+				while ((len = stream.read(buf)) != -1)
+					bytes.write(buf, 0, len);
+				return bytes.toByteArray();
+			}
+		});
+		for (String name : new String[] { "daniel.ttf", "danielbd.ttf", "danielbk.ttf" })
+			for (float px : new float[] { 12.0f, 16.0f, 22.0f }) {
+				Font font = cache.get(new ResourceLocation("fontbox", "fonts/" + name)).derive(px);
+				assertEquals("derived size", px, font.getSize2D(), 0.0f);
+			}
+		assertEquals("one read per typeface", 3, reads.get());
+		assertEquals("one parse per typeface", 3, cache.getParseCount());
+		assertSame("same typeface", cache.get(new ResourceLocation("fontbox", "fonts/daniel.ttf")),
+				cache.get(new ResourceLocation("fontbox", "fonts/daniel.ttf")));
+	}
+
+	/**
+	 * Test to check that the atlas cache round-trips an entry, keys on the
+	 * baked subset and parameters, discards truncated and foreign files and
+	 * trims the least recently used entries first.
+	 */
+	@Test
+	public void testAtlasCache() throws Exception {
+		File directory = Files.createTempDirectory("fontbox-atlas").toFile();
+		try {
+			List<Object> warnings = new ArrayList<>();
+			VoidTracer trace = new VoidTracer() {
+				@Override
+				public void warn(Object... params) {
+					warnings.add(params[1]);
+				}
+			};
+			GLFontAtlasCache cache = new GLFontAtlasCache(directory);
+			byte[] source = "typeface".getBytes("UTF-8");
+			BitSet subset = new BitSet();
+			subset.set('a', 'z' + 1);
+			String key = GLFontAtlasCache.key(source, subset, 16.0f);
+			assertNotEquals("key covers subset", key, GLFontAtlasCache.key(source, 16.0f));
+			assertNotEquals("key covers params", key, GLFontAtlasCache.key(source, subset, 18.0f));
+			assertEquals("key is stable", key, GLFontAtlasCache.key(source, subset, 16.0f));
+
+			byte[] raster = new byte[16 * 8];
+			new Random(7).nextBytes(raster);
+			GLFontMetrics metric = testMetrics('a', 5, 'b', 6);
+			cache.store(trace, key, new GLFontAtlasCache.Entry("test", GL11.GL_ALPHA, 16, 8, raster, metric));
+			GLFontAtlasCache.Entry entry = cache.load(trace, key);
+			assertNotNull("entry loaded", entry);
+			assertEquals("name", "test", entry.name);
+			assertEquals("format", GL11.GL_ALPHA, entry.format);
+			assertEquals("width", 16, entry.width);
+			assertEquals("height", 8, entry.height);
+			assertArrayEquals("raster", raster, entry.raster);
+			ByteArrayOutputStream stored = new ByteArrayOutputStream(), loaded = new ByteArrayOutputStream();
+			metric.writeBinary(new DataOutputStream(stored));
+			entry.metric.writeBinary(new DataOutputStream(loaded));
+			assertArrayEquals("metrics", stored.toByteArray(), loaded.toByteArray());
+
+			File file = new File(directory, key + ".fba");
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 40));
+			assertNull("truncated entry", cache.load(trace, key));
+			assertFalse("truncated entry discarded", file.exists());
+			Files.write(file.toPath(), "not an atlas cache entry".getBytes("UTF-8"));
+			assertNull("foreign entry", cache.load(trace, key));
+			assertFalse("foreign entry discarded", file.exists());
+			cache.store(trace, key, new GLFontAtlasCache.Entry("test", GL11.GL_RGBA, 16, 8, raster, metric));
+			assertNull("raster shorter than format", cache.load(trace, key));
+			assertFalse("short raster discarded", file.exists());
+			assertEquals("discards warned", 3, warnings.size());
+
+			String[] keys = new String[3];
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = GLFontAtlasCache.key(source, (float) i);
+				cache.store(trace, keys[i], new GLFontAtlasCache.Entry("test", GL11.GL_ALPHA, 16, 8, raster, metric));
+			}
+			long size = new File(directory, keys[0] + ".fba").length();
+			long now = System.currentTimeMillis();
+			new File(directory, keys[0] + ".fba").setLastModified(now - 1000);
+			new File(directory, keys[1] + ".fba").setLastModified(now - 3000);
+			new File(directory, keys[2] + ".fba").setLastModified(now - 2000);
+			cache.setLimit(size * 2);
+			cache.trim(trace);
+			assertFalse("oldest evicted", new File(directory, keys[1] + ".fba").exists());
+			assertTrue("newer kept", new File(directory, keys[0] + ".fba").exists());
+			assertTrue("newer kept", new File(directory, keys[2] + ".fba").exists());
+		} finally {
+			File[] files = directory.listFiles();
+			if (files != null)
+				for (File file : files)
+					file.delete();
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Test to check that document coverage counts default and explicitly
+	 * formatted text separately, and that a subset bake holds exactly the
+	 * covered glyphs with the same measurements as a full bake.
+	 */
+	@Test
+	public void testSubsetBake() throws Exception {
+		FontboxManager manager = new FontboxManager();
+		TestFont special = new TestFont(manager, "special");
+		DocumentWrapper doc = new DocumentWrapper();
+		doc.addHeading("intro", "Intro");
+		doc.addParagraph("fox jumps");
+		doc.addParagraph(new FormattedString("$$", new TextFormat(special)));
+		FormattedString mixed = new FormattedString("ab#");
+		mixed.applyFormat(new TextFormat(special), 2);
+		doc.addParagraph(mixed);
+		FontCoverage coverage = new FontCoverage();
+		doc.collectCoverage(coverage);
+
+		BitSet plain = coverage.getDefault();
+		for (char c : "Introfx jumpsab".toCharArray())
+			assertTrue("default " + c, plain.get(c));
+		assertFalse("formatted text not default", plain.get('$') || plain.get('#'));
+		BitSet own = coverage.forFont("special", null);
+		assertTrue("own text", own.get('$') && own.get('#') && own.get('f'));
+		BitSet other = coverage.forFont("other", FontCoverage.ascii());
+		assertTrue("margin", other.get('Z'));
+		assertFalse("other font text", coverage.forFont("other", null).get('$'));
+
+		Font font;
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/daniel.ttf")) {
+			font = Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(16.0f);
+		}
+		BitSet subset = coverage.forFont(font.getFontName(), null);
+		assertFalse("substitute not covered", subset.get('?'));
+		GLGlyphBaker.Result full = new GLGlyphBaker(new VoidTracer(), font).bake(true);
+		GLGlyphBaker.Result part = new GLGlyphBaker(new VoidTracer(), font, 0, subset).bake(true);
+		GLGlyphTable table = part.metric.getGlyphTable();
+		assertEquals("only covered glyphs and substitute", subset.cardinality() + 1, table.size());
+		assertEquals("substitute baked", full.metric.widthOf('?'), part.metric.widthOf('?'));
+		assertTrue("substitute has width", part.metric.widthOf('?') > 0);
+		for (int cp = subset.nextSetBit(0); cp >= 0; cp = subset.nextSetBit(cp + 1)) {
+			char c = (char) cp;
+			assertEquals("width of " + c, full.metric.widthOf(c), part.metric.widthOf(c));
+			assertEquals("height of " + c, full.metric.heightOf(c), part.metric.heightOf(c));
+			int row = part.metric.rowOf(c);
+			assertEquals("width by row " + c, part.metric.widthOf(c), part.metric.widthAt(row));
+			assertEquals("ascent by row " + c, part.metric.ascentOf(c), part.metric.ascentAt(row));
+			assertEquals("u by row " + c, part.metric.uOf(c), part.metric.uAt(row));
+			assertEquals("v by row " + c, part.metric.vOf(c), part.metric.vAt(row));
+			for (int cp2 = subset.nextSetBit(0); cp2 >= 0; cp2 = subset.nextSetBit(cp2 + 1))
+				assertEquals("kerning " + c + (char) cp2, full.metric.kerningOf(c, (char) cp2),
+						part.metric.kerningOf(c, (char) cp2));
+		}
+		assertFalse("uncovered glyph", part.metric.hasGlyph('Q'));
+		assertEquals("uncovered row", -1, part.metric.rowOf('Q'));
+		assertTrue("smaller atlas", part.image.getWidth() * part.image.getHeight()
+				< full.image.getWidth() * full.image.getHeight());
+	}
+
+	/**
+	 * Test to check that fitting a run of words onto a line gives the same
+	 * lines as pushing the words one at a time until one does not fit, for
+	 * every alignment, with and without an element below the cursor.
+	 */
+	@Test
+	public void testLineFitting() throws Exception {
+		FontboxManager manager = new FontboxManager();
+		IGLFont regular, bold;
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/daniel.ttf")) {
+			regular = GLMetricsFont.fromFont(manager, Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(16.0f), null);
+		}
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/danielbd.ttf")) {
+			bold = GLMetricsFont.fromFont(manager, Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(22.0f), null);
+		}
+		Random random = new Random(18);
+		for (int round = 0; round < 400; round++) {
+			PageProperties properties = new PageProperties(150 + random.nextInt(350), 200 + random.nextInt(400),
+					new TextFormat(regular));
+			properties.bothMargin(random.nextInt(10)).lineHeightSize(20 + random.nextInt(20))
+					.spaceSize(random.nextInt(6)).densitiy(0.1f + random.nextFloat() * 0.8f);
+			PageWriter writer = new PageWriter(properties, manager);
+			Page page = writer.current();
+			if (random.nextBoolean()) {
+				Image image = new Image(new ResourceLocation("fontbox", "image"), 10 + random.nextInt(60),
+						10 + random.nextInt(60), FloatMode.RIGHT);
+				image.setBounds(new ObjectBounds(random.nextInt(properties.width - 70),
+						random.nextInt(properties.height - 70), 10 + random.nextInt(60), 10 + random.nextInt(60),
+						FloatMode.RIGHT));
+				writer.write(image);
+			}
+			writer.cursor().left(random.nextInt(30));
+			writer.cursor().top(random.nextInt(properties.height));
+
+			String[] words = new String[random.nextInt(60)];
+			for (int i = 0; i < words.length; i++) {
+				char[] word = new char[1 + random.nextInt(10)];
+				for (int j = 0; j < word.length; j++)
+					word[j] = (char) ('a' + random.nextInt(26));
+				words[i] = new String(word);
+			}
+			TextFormatter fitFormats = new TextFormatter(properties.bodyFormat);
+			TextFormatter pushFormats = new TextFormatter(properties.bodyFormat);
+			for (int i = 0; i < 5; i++) {
+				int at = random.nextInt(200);
+				TextFormat format = new TextFormat(random.nextBoolean() ? bold : regular);
+				fitFormats.addFormatting(at, format);
+				pushFormats.addFormatting(at, format);
+			}
+			AlignmentMode alignment = AlignmentMode.values()[random.nextInt(AlignmentMode.values().length)];
+			LineWriter fitted = new LineWriter(writer, fitFormats, alignment, null);
+			LineWriter pushed = new LineWriter(writer, pushFormats, alignment, null);
+
+			int next = 0;
+			while (next < words.length) {
+				int fit = fitted.fit(words, next, words.length, true);
+				int push = 0;
+				while (next + push < words.length) {
+					pushed.push(words[next + push], true);
+					ObjectBounds future = pushed.pendingBounds();
+					if (!page.insidePage(future) || page.intersectsElement(future) != null) {
+						pushed.pop(true);
+						break;
+					}
+					push++;
+				}
+				assertEquals("words on line, round " + round, push, fit);
+				assertEquals("bounds, round " + round, String.valueOf(pushed.pendingBounds()),
+						String.valueOf(fitted.pendingBounds()));
+				if (fit == 0)
+					break;
+				Line expected = pushed.emit(), actual = fitted.emit();
+				assertEquals("line text", new String(expected.line), new String(actual.line));
+				assertEquals("space size", expected.space_size, actual.space_size);
+				next += fit;
+			}
+		}
+	}
+
+	/**
+	 * Test to check that the word cache returns what was stored, stays
+	 * inside its capacity, gives used words a second chance, drops only the
+	 * words of a deleted font, and never stores a word measured before an
+	 * invalidation.
+	 */
+	@Test
+	public void testWordCache() throws Exception {
+		GLWordCache cache = new GLWordCache(64);
+		EnumSet<DecorationStyle> plain = EnumSet.noneOf(DecorationStyle.class);
+		EnumSet<DecorationStyle> bold = EnumSet.of(DecorationStyle.BOLD);
+		cache.put(1, plain, true, "the", 42L, cache.generation());
+		assertEquals("stored", 42L, cache.get(1, plain, true, "the"));
+		assertEquals("other font", GLWordCache.MISSING, cache.get(2, plain, true, "the"));
+		assertEquals("other decorations", GLWordCache.MISSING, cache.get(1, bold, true, "the"));
+		assertEquals("other kerning", GLWordCache.MISSING, cache.get(1, plain, false, "the"));
+		assertEquals("hits", 1, cache.getHits());
+		assertEquals("misses", 3, cache.getMisses());
+
+		Random random = new Random(19);
+		for (int i = 0; i < 5000; i++) {
+			String word = Integer.toString(random.nextInt(500), 36);
+			cache.put(1, plain, true, word, word.hashCode(), cache.generation());
+			assertEquals("frequent word kept", 42L, cache.get(1, plain, true, "the"));
+			assertTrue("bounded", cache.size() <= 64);
+		}
+		assertTrue("evicted", cache.getEvictions() > 0);
+		for (int i = 0; i < 500; i++) {
+			String word = Integer.toString(i, 36);
+			long value = cache.get(1, plain, true, word);
+			assertTrue("intact " + word, value == GLWordCache.MISSING || value == word.hashCode());
+		}
+		long since = cache.generation();
+		cache.put(2, plain, true, "the", 7L, since);
+		cache.invalidate(1);
+		assertEquals("deleted font dropped", GLWordCache.MISSING, cache.get(1, plain, true, "the"));
+		assertEquals("other font kept", 7L, cache.get(2, plain, true, "the"));
+		for (int i = 0; i < 500; i++)
+			assertEquals("all words dropped", GLWordCache.MISSING, cache.get(1, plain, true, Integer.toString(i, 36)));
+		cache.put(1, plain, true, "stale", 1L, since);
+		assertEquals("measured before invalidation", GLWordCache.MISSING, cache.get(1, plain, true, "stale"));
+
+		FontboxManager manager = new FontboxManager();
+		IGLFont font;
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/daniel.ttf")) {
+			font = GLMetricsFont.fromFont(manager, Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(16.0f), null);
+		}
+		Document doc = new Document();
+		for (int i = 0; i < 20; i++)
+			doc.push(new Paragraph(new FormattedString("The quick brown fox jumps over the lazy dog, again and again.")));
+		PageProperties properties = new PageProperties(200, 150, new TextFormat(font));
+		properties.bothMargin(2).lineHeightSize(30).spaceSize(4).densitiy(0.66f);
+		PageWriter writer = new PageWriter(properties, manager);
+		DocumentProcessor.generatePages(new VoidTracer(), doc, writer);
+		writer.close();
+		assertTrue("words cached", manager.getWordCacheSize() > 0);
+		assertTrue("repeated words hit", manager.getWordCacheHitRate() > 0.5);
+		font.delete(manager);
+		assertEquals("dropped with the font", 0, manager.getWordCacheSize());
+	}
+
+	/**
+	 * Test to check that the string cursor reads, marks and rewinds like the
+	 * thread-safe reader it backs.
+	 */
+	@Test
+	public void testStringCursor() throws Exception {
+		String text = "The quick brown fox";
+		StringCursor cursor = new StringCursor(text);
+		StackedPushBackStringReader reader = new StackedPushBackStringReader(text);
+		for (int i = 0; i < 20; i++) {
+			cursor.pushPosition();
+			reader.pushPosition();
+			assertEquals("same character", reader.next(), cursor.next());
+		}
+		assertEquals("end of stream", 0, cursor.next());
+		assertEquals("nothing available", 0, cursor.available());
+		for (int i = 0; i < 10; i++) {
+			cursor.popPosition();
+			reader.popPosition();
+		}
+		assertEquals("popped back", reader.getPosition(), cursor.getPosition());
+		cursor.commitPosition();
+		reader.commitPosition();
+		cursor.rewind(100);
+		reader.rewind(100);
+		assertEquals("clamped", 0, cursor.getPosition());
+		cursor.skip(4);
+		reader.skip(4);
+		assertEquals("skipped", reader.next(), cursor.next());
+		assertEquals("marks left", 9, cursor.depth());
+	}
+
+	/**
+	 * Test to check that the formatter's runs answer lookups, cursors,
+	 * truncation and slicing the same as a plain sorted map of formats.
+	 */
+	@Test
+	public void testTextFormatter() {
+		TextFormat[] styles = new TextFormat[4];
+		for (int i = 0; i < styles.length; i++)
+			styles[i] = new TextFormat(null, EnumSet.noneOf(DecorationStyle.class), new ColorFormat(i, i, i, i));
+		Random random = new Random(21);
+		for (int round = 0; round < 200; round++) {
+			TextFormatter formatter = new TextFormatter();
+			TreeMap<Integer, TextFormat> model = new TreeMap<>();
+			for (int op = 0; op < 40; op++) {
+				int index = random.nextInt(120);
+				switch (random.nextInt(4)) {
+				case 0:
+				case 1:
+					TextFormat style = styles[random.nextInt(styles.length)];
+					formatter.addFormatting(index, style);
+					model.put(index, style);
+					break;
+				case 2:
+					formatter.addDefaultFormat(styles[0]);
+					model.putIfAbsent(0, styles[0]);
+					break;
+				default:
+					boolean removed = model.keySet().removeIf(key -> key >= index / 2 && key != 0);
+					assertEquals("removed", removed, formatter.cleanAfter(index / 2));
+				}
+			}
+			assertEquals("formats", model, formatter.getFormats());
+			TextFormatter.Cursor cursor = formatter.cursor();
+			for (int i = 0; i < 130; i++) {
+				Map.Entry<Integer, TextFormat> floor = model.floorEntry(i);
+				TextFormat expected = (floor != null) ? floor.getValue() : null;
+				assertSame("format at " + i, expected, formatter.getFormat(i));
+				assertSame("cursor at " + i, expected, cursor.at(i));
+				assertEquals("uniform at " + i, model.subMap(i, false, i + 5, false).isEmpty(),
+						formatter.isUniform(i, i + 5));
+			}
+			int start = random.nextInt(100), length = random.nextInt(30);
+			TreeMap<Integer, TextFormat> slice = new TreeMap<>();
+			slice.put(0, formatter.getFormat(start));
+			for (Map.Entry<Integer, TextFormat> entry : model.subMap(start, true, start + length, true).entrySet())
+				slice.put(entry.getKey() - start, entry.getValue());
+			assertEquals("slice", slice, formatter.getFormatter(start, length).getFormats());
+			assertSame("cursor backwards", formatter.getFormat(3), cursor.at(3));
+		}
+	}
+
+	/**
+	 * Test to check that excluded ranges, overlapping or not, leave the same
+	 * gaps as excluding each integer one at a time.
+	 */
+	@Test
+	public void testIntegerStreamGaps() {
+		Random random = new Random(22);
+		for (int round = 0; round < 2000; round++) {
+			IntegerExclusionStream stream = new IntegerExclusionStream(0, 60);
+			boolean[] excluded = new boolean[61];
+			for (int i = random.nextInt(6); i > 0; i--) {
+				int a = random.nextInt(61), b = random.nextInt(61);
+				stream.excludeRange(a, b);
+				for (int n = Math.min(a, b); n <= Math.max(a, b); n++)
+					excluded[n] = true;
+			}
+			int size = 0, bestStart = 0, bestSize = 0;
+			for (int n = 0; n <= 60; n++) {
+				if (!excluded[n]) {
+					size++;
+					continue;
+				}
+				if (size > bestSize) {
+					bestStart = n - size;
+					bestSize = size;
+				}
+				size = 0;
+			}
+			if (size > bestSize)
+				bestStart = 60 - size;
+			assertEquals("largest gap, round " + round, Math.max(0, bestStart), stream.largest());
+			for (int n = stream.next(); n <= 60; n = stream.next())
+				assertFalse("next skips " + n, excluded[n]);
+		}
+	}
+
+	@Test
+	public void testPageSkyline() {
+		Random random = new Random(23);
+		for (int round = 0; round < 200; round++) {
+			PageSkyline skyline = new PageSkyline();
+			List<ObjectBounds> all = new ArrayList<ObjectBounds>();
+			int y = 0;
+			for (int step = 0; step < 60; step++) {
+				if (random.nextInt(10) == 0)
+					y = random.nextInt(y + 1);
+				FloatMode mode = (random.nextInt(4) == 0) ? FloatMode.LEFT : FloatMode.NONE;
+				ObjectBounds bb = new ObjectBounds(random.nextInt(300), y + random.nextInt(20), random.nextInt(120),
+						random.nextInt(mode == FloatMode.NONE ? 30 : 200), mode);
+				all.add(bb);
+				skyline.add(bb);
+				int top = y;
+				for (ObjectBounds that : all)
+					if (!that.floating() && that.y + that.height + 1 > top)
+						top = that.y + that.height + 1;
+				IntegerExclusionStream window = new IntegerExclusionStream(0, 400);
+				for (ObjectBounds that : all)
+					if (top >= that.y && that.y + that.height >= top)
+						window.excludeRange(0, that.x + that.width);
+				assertEquals("top, round " + round, top, skyline.top(y));
+				assertEquals("left, round " + round, window.largest(), skyline.left(top, 400));
+				y = top;
+			}
+		}
+	}
+
+	@Test
+	public void testPageIndex() {
+		Random random = new Random(24);
+		for (int round = 0; round < 50; round++) {
+			Page page = new Page(new PageProperties(400, 600, null).lineHeightSize(30));
+			List<IElement> all = new ArrayList<IElement>();
+			for (int i = 0; i < 80; i++) {
+				Image image = new Image(new ResourceLocation("fontbox", "image"), 1, 1);
+				image.setBounds(new ObjectBounds(random.nextInt(440) - 20, random.nextInt(700) - 50,
+						random.nextInt(80), random.nextInt(i % 10 == 0 ? 400 : 40), FloatMode.NONE));
+				page.push(image);
+				all.add(image);
+				for (int query = 0; query < 10; query++) {
+					ObjectBounds bb = new ObjectBounds(random.nextInt(400), random.nextInt(600), random.nextInt(100),
+							random.nextInt(100), FloatMode.NONE);
+					IElement expected = null;
+					for (IElement that : all)
+						if (that.bounds().intersects(bb)) {
+							expected = that;
+							break;
+						}
+					assertSame("intersecting element, round " + round, expected, page.intersectsElement(bb));
+					int x = random.nextInt(420) - 10, y = random.nextInt(620) - 10;
+					expected = null;
+					for (IElement that : all)
+						if (that.bounds().encloses(x, y)) {
+							expected = that;
+							break;
+						}
+					assertSame("element at point, round " + round, expected, DocumentProcessor.getElementAt(page, x, y));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParallelPagination() throws Exception {
+		FontboxManager manager = new FontboxManager();
+		IGLFont regular, bold;
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/daniel.ttf")) {
+			regular = GLMetricsFont.fromFont(manager, Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(16.0f), null);
+		}
+		try (InputStream stream = getClass().getResourceAsStream("/assets/fontbox/fonts/danielbd.ttf")) {
+			bold = GLMetricsFont.fromFont(manager, Font.createFont(Font.TRUETYPE_FONT, stream).deriveFont(22.0f), null);
+		}
+		String[] vocab = "the quick brown fox jumps over lazy dog AVAST Wave To a I of and extraordinarily".split(" ");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Random random = new Random(25);
+			for (int round = 0; round < 30; round++) {
+				Document doc = new Document();
+				if (round % 3 == 0)
+					doc.push(new CompilerHintElement(CompilerHint.PAGE_BREAK));
+				for (int e = 0; e < 40; e++) {
+					int kind = random.nextInt(10);
+					StringBuilder text = new StringBuilder();
+					for (int i = 1 + random.nextInt(kind == 0 ? 4 : 60); i > 0; i--)
+						text.append(vocab[random.nextInt(vocab.length)]).append(' ');
+					if (kind == 0)
+						doc.push(new Heading("h" + e, new FormattedString(text.toString())));
+					else if (kind <= 2)
+						doc.push(new CompilerHintElement(CompilerHint.PAGE_BREAK));
+					else if (kind == 3)
+						doc.push(new Image(new ResourceLocation("fontbox", "image"), 10 + random.nextInt(60),
+								10 + random.nextInt(60), FloatMode.LEFT));
+					else
+						doc.push(new Paragraph(new FormattedString(text.toString()),
+								AlignmentMode.values()[random.nextInt(AlignmentMode.values().length)]));
+				}
+				if (round % 2 == 0)
+					doc.push(new CompilerHintElement(CompilerHint.PAGE_BREAK));
+				PageProperties properties = new PageProperties(150 + random.nextInt(250), 200 + random.nextInt(200),
+						new TextFormat(regular));
+				properties.headingFormat = new TextFormat(bold);
+				properties.bothMargin(2).lineHeightSize(20).spaceSize(4).densitiy(0.66f);
+
+				PageWriter serial = new PageWriter(properties, manager);
+				DocumentProcessor.generatePages(new VoidTracer(), doc, serial);
+				serial.close();
+				PageWriter parallel = new PageWriter(properties, manager);
+				pool.submit(() -> {
+					DocumentProcessor.generatePages(new VoidTracer(), doc, parallel, true);
+					return null;
+				}).get();
+				parallel.close();
+				PageWriter inline = new PageWriter(properties, manager);
+				DocumentProcessor.generatePages(new VoidTracer(), doc, inline, true);
+				inline.close();
+
+				assertEquals("parallel pages, round " + round, dumpPages(serial), dumpPages(parallel));
+				assertEquals("inline pages, round " + round, dumpPages(serial), dumpPages(inline));
+				assertEquals("parallel fonts, round " + round, serial.fonts(), parallel.fonts());
+				for (int e = 0; e < 40; e++) {
+					assertEquals("parallel anchor, round " + round, serial.index().find("h" + e),
+							parallel.index().find("h" + e));
+					assertEquals("inline anchor, round " + round, serial.index().find("h" + e),
+							inline.index().find("h" + e));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static String dumpPages(PageWriter writer) {
+		StringBuilder dump = new StringBuilder();
+		for (IPage page : writer.pages()) {
+			dump.append("page\n");
+			for (IElement element : page.allElements()) {
+				dump.append(element.getClass().getSimpleName()).append(' ').append(element.bounds());
+				if (element instanceof Line) {
+					Line line = (Line) element;
+					dump.append(" sp=").append(line.space_size).append(" [").append(line.line).append(']');
+					for (Map.Entry<Integer, TextFormat> run : line.formatter.getFormats().entrySet())
+						dump.append(" @").append(run.getKey()).append('=').append(run.getValue().font);
+				}
+				dump.append('\n');
+			}
+		}
+		return dump.toString();
+	}
 }